@@ -0,0 +1,50 @@
+package com.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * insertText into a full row at different columns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertBenchmark {
+
+    @Param({"0", "40", "79"})
+    public int column;
+
+    @Param({"1", "16"})
+    public int length;
+
+    private TerminalBuffer buffer;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(80, 24, 1000);
+        buffer.fillLine(12, '.');
+        text = WriteBenchmark.sampleText("ascii", length);
+    }
+
+    @Benchmark
+    public TerminalBuffer insertText() {
+        buffer.setCursorPosition(12, column);
+        buffer.insertText(text);
+        return buffer;
+    }
+}
@@ -0,0 +1,75 @@
+package com.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VtParser ingestion throughput. One operation is one byte, so the score in
+ * ops/us is MB/s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    @Param({"ascii", "colored", "utf8"})
+    public String input;
+
+    private TerminalBuffer buffer;
+    private VtParser parser;
+    private ByteBuffer chunk;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(120, 40, 10000);
+        parser = new VtParser(buffer);
+
+        String line;
+        switch (input) {
+            case "colored":
+                line = "\u001b[1;32mPASS\u001b[0m src/test/terminal.spec.ts \u001b[2m(12 ms)\u001b[0m\r\n";
+                break;
+            case "utf8":
+                line = "日志 INFO 终端缓冲区 ok — naïve café\r\n";
+                break;
+            default:
+                line = "2024-01-01 12:00:00 INFO request handled in 12ms\r\n";
+                break;
+        }
+        byte[] unit = line.getBytes(StandardCharsets.UTF_8);
+        chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        while (chunk.remaining() >= unit.length) {
+            chunk.put(unit);
+        }
+        // pad so every invocation is exactly CHUNK_BYTES
+        while (chunk.hasRemaining()) {
+            chunk.put((byte) ' ');
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_BYTES)
+    public TerminalBuffer feed() {
+        chunk.clear();
+        parser.feed(chunk);
+        return buffer;
+    }
+}
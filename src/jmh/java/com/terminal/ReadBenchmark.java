@@ -0,0 +1,101 @@
+package com.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads from deep scrollback and full-content export.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({"1000", "100000"})
+    public int scrollbackLines;
+
+    private TerminalBuffer buffer;
+    private int deepRow;
+    private final char[] rowChars = new char[80];
+    private final int[] rowAttrs = new int[80];
+    private long visited;
+    private final CellVisitor visitor = (row, col, ch, attributeId) -> visited += ch + attributeId;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(80, 24, scrollbackLines);
+        for (int i = 0; i < scrollbackLines + 24; i++) {
+            buffer.setCursorPosition(23, 0);
+            buffer.writeText("history line " + i);
+            buffer.insertLineAtBottom();
+        }
+        deepRow = -scrollbackLines + 1;
+    }
+
+    @Benchmark
+    public char getCharAtDeepRow() {
+        return buffer.getCharAt(deepRow, 10);
+    }
+
+    @Benchmark
+    public CellAttributes getAttributesAtDeepRow() {
+        return buffer.getAttributesAt(deepRow, 10);
+    }
+
+    @Benchmark
+    public String getLineAsStringDeepRow() {
+        return buffer.getLineAsString(deepRow);
+    }
+
+    // reading the whole screen the way a renderer would: per cell, per row, or visited
+
+    @Benchmark
+    public long renderScreenPerCell() {
+        long sum = 0;
+        for (int row = 0; row < 24; row++) {
+            for (int col = 0; col < 80; col++) {
+                sum += buffer.getCharAt(row, col) + buffer.getAttributesAt(row, col).getForeground().ordinal();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long renderScreenCopyRow() {
+        long sum = 0;
+        for (int row = 0; row < 24; row++) {
+            buffer.copyRow(row, rowChars, rowAttrs);
+            for (int col = 0; col < 80; col++) {
+                sum += rowChars[col] + rowAttrs[col];
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long renderScreenForEachCell() {
+        visited = 0;
+        buffer.forEachCell(0, 24, visitor);
+        return visited;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String getAllContent() {
+        return buffer.getAllContent();
+    }
+}
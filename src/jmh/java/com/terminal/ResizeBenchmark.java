@@ -0,0 +1,56 @@
+package com.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Window drag: alternate between two sizes with a populated history, which is
+ * re-wrapped on every width change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResizeBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int scrollbackLines;
+
+    private TerminalBuffer buffer;
+    private boolean wide;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(80, 24, scrollbackLines);
+        String line = WriteBenchmark.sampleText("ascii", 120);
+        for (int i = 0; i < scrollbackLines + 24; i++) {
+            buffer.setCursorPosition(23, 0);
+            buffer.writeText(line);
+            buffer.insertLineAtBottom();
+        }
+    }
+
+    @Benchmark
+    public TerminalBuffer resize() {
+        wide = !wide;
+        if (wide) {
+            buffer.resize(120, 40);
+        } else {
+            buffer.resize(80, 24);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,60 @@
+package com.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained log-tailing: write a line and scroll, with scrollback already full.
+ * Also scrolling inside a scroll region, like a pager with a status line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScrollBenchmark {
+
+    @Param({"1000", "100000"})
+    public int maxScrollback;
+
+    private TerminalBuffer buffer;
+    private TerminalBuffer regionBuffer;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(80, 24, maxScrollback);
+        for (int i = 0; i < maxScrollback + 24; i++) {
+            buffer.insertLineAtBottom();
+        }
+        regionBuffer = new TerminalBuffer(80, 24, maxScrollback);
+        regionBuffer.setScrollRegion(0, 22);
+    }
+
+    @Benchmark
+    public TerminalBuffer writeLineAndScroll() {
+        buffer.setCursorPosition(23, 0);
+        buffer.writeText("2024-01-01 12:00:00 INFO request handled in 12ms");
+        buffer.insertLineAtBottom();
+        return buffer;
+    }
+
+    @Benchmark
+    public TerminalBuffer writeLineAndScrollRegion() {
+        regionBuffer.setCursorPosition(22, 0);
+        regionBuffer.writeText("2024-01-01 12:00:00 INFO request handled in 12ms");
+        regionBuffer.lineFeed();
+        return regionBuffer;
+    }
+}
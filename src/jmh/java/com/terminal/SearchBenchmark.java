@@ -0,0 +1,52 @@
+package com.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "Find previous" of a string that only occurs near the oldest end of scrollback,
+ * with and without the search index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class SearchBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int scrollbackLines;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private TerminalBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(80, 24, scrollbackLines);
+        buffer.setSearchIndexEnabled(indexed);
+        for (int i = 0; i < scrollbackLines + 24; i++) {
+            buffer.setCursorPosition(23, 0);
+            buffer.writeText(i == 100 ? "request " + i + " FAILED" : "request " + i + " ok");
+            buffer.insertLineAtBottom();
+        }
+    }
+
+    @Benchmark
+    public SearchResult findPrevious() {
+        return buffer.find("failed", true, 0, 0, false);
+    }
+}
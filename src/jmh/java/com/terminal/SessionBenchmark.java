@@ -0,0 +1,72 @@
+package com.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving a session with a full history, and restoring it - the restore includes
+ * reading the screen, like a renderer would right after.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class SessionBenchmark {
+
+    @Param({"10000", "100000"})
+    public int scrollbackLines;
+
+    private TerminalBuffer buffer;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        buffer = new TerminalBuffer(80, 24, scrollbackLines);
+        String line = WriteBenchmark.sampleText("ascii", 60);
+        for (int i = 0; i < scrollbackLines + 24; i++) {
+            buffer.setCursorPosition(23, 0);
+            buffer.writeText(line);
+            buffer.insertLineAtBottom();
+        }
+        file = Files.createTempFile("session-", ".bin");
+        save();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Path save() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.saveSession(channel);
+        }
+        return file;
+    }
+
+    @Benchmark
+    public String load() throws IOException {
+        return TerminalBuffer.loadSession(file).getScreenContent();
+    }
+}
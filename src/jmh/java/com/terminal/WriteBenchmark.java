@@ -0,0 +1,66 @@
+package com.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writeText throughput. The buffer keeps scrolling as text is written, so this
+ * also covers wrapping and scrollback eviction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({"ascii", "cjk", "mixed"})
+    public String text;
+
+    private TerminalBuffer buffer;
+    private String chunk;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(80, 24, 1000);
+        chunk = sampleText(text, 4096);
+    }
+
+    @Benchmark
+    public TerminalBuffer writeText() {
+        buffer.writeText(chunk);
+        return buffer;
+    }
+
+    static String sampleText(String kind, int length) {
+        String unit;
+        switch (kind) {
+            case "cjk":
+                unit = "终端缓冲区性能测试";
+                break;
+            case "mixed":
+                unit = "build 终端 OK 42 ";
+                break;
+            default:
+                unit = "The quick brown fox jumps over the lazy dog. ";
+                break;
+        }
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append(unit);
+        }
+        return sb.substring(0, length);
+    }
+}
@@ -0,0 +1,85 @@
+package com.terminal;
+
+/**
+ * Shared interning table for cell attributes.
+ *
+ * Every (foreground, background, bold/italic/underline) combination maps to a small
+ * integer id. Rows store only the id and resolve it back through this palette, so
+ * writing text never allocates attribute objects and comparing attributes is a
+ * single int compare. The id space is small (17 * 17 * 8 entries), so the whole
+ * palette is built up front and shared by every buffer.
+ */
+final class AttributePalette {
+    static final int DEFAULT_ID = 0;
+
+    private static final int BOLD = 1;
+    private static final int ITALIC = 2;
+    private static final int UNDERLINE = 4;
+    private static final int STYLE_BITS = 8;
+
+    private static final CellAttributes.Color[] COLORS = CellAttributes.Color.values();
+    private static final int COLOR_CODES = COLORS.length;
+
+    static final int SIZE = COLOR_CODES * COLOR_CODES * STYLE_BITS;
+
+    private static final CellAttributes[] ENTRIES = new CellAttributes[SIZE];
+
+    static {
+        for (int id = 0; id < SIZE; id++) {
+            CellAttributes.Style style = new CellAttributes.Style(
+                    isBold(id), isItalic(id), isUnderline(id));
+            ENTRIES[id] = new CellAttributes(foreground(id), background(id), style).freeze();
+        }
+    }
+
+    private AttributePalette() {
+    }
+
+    static int idOf(CellAttributes.Color foreground, CellAttributes.Color background,
+                    boolean bold, boolean italic, boolean underline) {
+        int styleBits = (bold ? BOLD : 0) | (italic ? ITALIC : 0) | (underline ? UNDERLINE : 0);
+        return ((colorCode(foreground) * COLOR_CODES) + colorCode(background)) * STYLE_BITS + styleBits;
+    }
+
+    static int idOf(CellAttributes attributes) {
+        CellAttributes.Style style = attributes.getStyle();
+        return idOf(attributes.getForeground(), attributes.getBackground(),
+                style.isBold(), style.isItalic(), style.isUnderline());
+    }
+
+    /**
+     * Returns the shared, immutable attributes for an id.
+     */
+    static CellAttributes get(int id) {
+        return ENTRIES[id];
+    }
+
+    static CellAttributes.Color foreground(int id) {
+        return colorOf((id / STYLE_BITS) / COLOR_CODES);
+    }
+
+    static CellAttributes.Color background(int id) {
+        return colorOf((id / STYLE_BITS) % COLOR_CODES);
+    }
+
+    static boolean isBold(int id) {
+        return (id & BOLD) != 0;
+    }
+
+    static boolean isItalic(int id) {
+        return (id & ITALIC) != 0;
+    }
+
+    static boolean isUnderline(int id) {
+        return (id & UNDERLINE) != 0;
+    }
+
+    // DEFAULT maps to 0 so that a zeroed id array means "default attributes"
+    private static int colorCode(CellAttributes.Color color) {
+        return color == CellAttributes.Color.DEFAULT ? 0 : color.ordinal() + 1;
+    }
+
+    private static CellAttributes.Color colorOf(int code) {
+        return code == 0 ? CellAttributes.Color.DEFAULT : COLORS[code - 1];
+    }
+}
@@ -0,0 +1,104 @@
+package com.terminal;
+
+/**
+ * Counters, gauges and latency histograms for one {@link TerminalBuffer}.
+ *
+ * Only exists while metrics are enabled (see {@link TerminalBuffer#setMetricsEnabled}).
+ * With metrics off the buffer's hot paths just skip a null check. Counters and
+ * histograms are updated by the thread writing to the buffer without
+ * synchronization, so another thread reading them may see slightly stale values.
+ * Gauges are computed when read and should be read from the writing thread.
+ */
+public final class BufferMetrics {
+    private final TerminalBuffer buffer;
+
+    long charactersWritten;
+    long charactersInserted;
+    long wraps;
+    long scrolls;
+    long scrollbackEvictions;
+
+    final LatencyHistogram writeLatency = new LatencyHistogram();
+    final LatencyHistogram resizeLatency = new LatencyHistogram();
+    final LatencyHistogram exportLatency = new LatencyHistogram();
+
+    BufferMetrics(TerminalBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Characters passed to writeText, including those written through {@link VtParser}.
+     */
+    public long getCharactersWritten() {
+        return charactersWritten;
+    }
+
+    public long getCharactersInserted() {
+        return charactersInserted;
+    }
+
+    /**
+     * Number of times text soft-wrapped to the next row.
+     */
+    public long getWraps() {
+        return wraps;
+    }
+
+    /**
+     * Rows scrolled, by the whole screen or inside a scroll region, in either direction.
+     */
+    public long getScrolls() {
+        return scrolls;
+    }
+
+    /**
+     * Lines dropped from the oldest end of a full scrollback.
+     */
+    public long getScrollbackEvictions() {
+        return scrollbackEvictions;
+    }
+
+    /**
+     * Scrollback depth in lines (gauge).
+     */
+    public int getScrollbackDepth() {
+        return buffer.getScrollbackSize();
+    }
+
+    /**
+     * Estimated heap bytes held by screen and scrollback lines (gauge).
+     */
+    public long getEstimatedBytes() {
+        return buffer.estimatedMemoryBytes();
+    }
+
+    /**
+     * Latency of writeText calls.
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    public LatencyHistogram getResizeLatency() {
+        return resizeLatency;
+    }
+
+    /**
+     * Latency of getAllContent and exportContent calls.
+     */
+    public LatencyHistogram getExportLatency() {
+        return exportLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferMetrics{charactersWritten=" + charactersWritten
+                + ", charactersInserted=" + charactersInserted
+                + ", wraps=" + wraps
+                + ", scrolls=" + scrolls
+                + ", scrollbackEvictions=" + scrollbackEvictions
+                + ", write=" + writeLatency
+                + ", resize=" + resizeLatency
+                + ", export=" + exportLatency + "}";
+    }
+}
@@ -0,0 +1,236 @@
+package com.terminal;
+
+import java.nio.CharBuffer;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds text in scrollback and screen rows, going forward or backward from a position.
+ *
+ * Plain-text searches of three or more characters use the history's
+ * {@link SearchIndex} when it is enabled, so only lines that can contain the text
+ * are read. Shorter queries, regex searches and the screen rows are scanned row by
+ * row. Either way rows are read into reusable arrays, so a search never copies the
+ * history.
+ */
+final class BufferSearch {
+    private final History history;
+    private final IntFunction<Line> screen;
+    private final int width;
+    private final int height;
+
+    // the current row: cells as stored, then as searched (see SearchIndex.searchableText)
+    private final char[] cells;
+    private final int[] attrs;
+    private final char[] text;
+    private final int[] columns;
+    private final CharBuffer textView;
+    private int textLength;
+
+    // what to look for - either a literal or a pattern
+    private char[] literal;
+    private boolean ignoreCase;
+    private Matcher matcher;
+
+    private int matchStart;
+    private int matchEnd;
+
+    BufferSearch(History history, IntFunction<Line> screen, int width, int height) {
+        this.history = history;
+        this.screen = screen;
+        this.width = width;
+        this.height = height;
+        this.cells = new char[width];
+        this.attrs = new int[width];
+        this.text = new char[width];
+        this.columns = new int[width];
+        this.textView = CharBuffer.wrap(text);
+    }
+
+    SearchResult find(String query, boolean ignoreCase, int fromRow, int fromCol, boolean forward) {
+        if (query.isEmpty()) {
+            return null;
+        }
+        this.literal = ignoreCase ? fold(query) : query.toCharArray();
+        this.ignoreCase = ignoreCase;
+        this.matcher = null;
+
+        SearchIndex index = history.index();
+        if (index != null) {
+            char[] folded = ignoreCase ? literal : fold(query);
+            SearchIndex.Postings candidates = index.candidates(folded, folded.length);
+            if (candidates != null) {
+                return forward ? findForwardIndexed(index, candidates, fromRow, fromCol)
+                        : findBackwardIndexed(index, candidates, fromRow, fromCol);
+            }
+        }
+        return forward ? findForward(fromRow, fromCol) : findBackward(fromRow, fromCol);
+    }
+
+    SearchResult find(Pattern pattern, int fromRow, int fromCol, boolean forward) {
+        this.literal = null;
+        this.matcher = pattern.matcher("");
+        return forward ? findForward(fromRow, fromCol) : findBackward(fromRow, fromCol);
+    }
+
+    private SearchResult findForward(int fromRow, int fromCol) {
+        int row = fromRow;
+        int col = fromCol;
+        if (row < -history.size()) {
+            row = -history.size();
+            col = 0;
+        }
+        for (; row < height; row++, col = 0) {
+            if (matchRow(row, col, true)) {
+                return result(row);
+            }
+        }
+        return null;
+    }
+
+    private SearchResult findBackward(int fromRow, int fromCol) {
+        int row = fromRow;
+        int col = fromCol;
+        if (row >= height) {
+            row = height - 1;
+            col = width;
+        }
+        for (; row >= -history.size(); row--, col = width) {
+            if (matchRow(row, col, false)) {
+                return result(row);
+            }
+        }
+        return null;
+    }
+
+    private SearchResult findForwardIndexed(SearchIndex index, SearchIndex.Postings candidates,
+                                            int fromRow, int fromCol) {
+        int size = history.size();
+        long firstSeq = history.firstSeq();
+        if (fromRow < 0) {
+            int row = Math.max(fromRow, -size);
+            int col = row == fromRow ? fromCol : 0;
+            for (int i = index.lowerBound(candidates, firstSeq + size + row); i < candidates.size(); i++) {
+                int candidate = (int) (index.seqAt(candidates, i) - firstSeq) - size;
+                if (matchRow(candidate, candidate == row ? col : 0, true)) {
+                    return result(candidate);
+                }
+            }
+            return findForward(0, 0);
+        }
+        return findForward(fromRow, fromCol);
+    }
+
+    private SearchResult findBackwardIndexed(SearchIndex index, SearchIndex.Postings candidates,
+                                             int fromRow, int fromCol) {
+        if (fromRow >= 0) {
+            int row = Math.min(fromRow, height - 1);
+            int col = row == fromRow ? fromCol : width;
+            for (; row >= 0; row--, col = width) {
+                if (matchRow(row, col, false)) {
+                    return result(row);
+                }
+            }
+        }
+        int size = history.size();
+        long firstSeq = history.firstSeq();
+        int row = Math.min(fromRow, -1);
+        int col = row == fromRow ? fromCol : width;
+        for (int i = index.lowerBound(candidates, firstSeq + size + row + 1) - 1; i >= 0; i--) {
+            int candidate = (int) (index.seqAt(candidates, i) - firstSeq) - size;
+            if (candidate < -size) {
+                break;
+            }
+            if (matchRow(candidate, candidate == row ? col : width, false)) {
+                return result(candidate);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks for a match in one row. Forward: the first one starting at or after
+     * {@code col}. Backward: the last one starting before {@code col}.
+     */
+    private boolean matchRow(int row, int col, boolean forward) {
+        if (row < 0) {
+            history.copyInto(history.size() + row, cells, attrs, width);
+        } else {
+            screen.apply(row).copyInto(cells, attrs, width);
+        }
+        textLength = SearchIndex.searchableText(cells, width, text, columns);
+
+        boolean found = false;
+        if (matcher != null) {
+            textView.clear().limit(textLength);
+            matcher.reset(textView);
+            while (matcher.find()) {
+                int start = matcher.start();
+                if (forward ? columnAt(start) >= col : columnAt(start) < col) {
+                    matchStart = start;
+                    matchEnd = matcher.end();
+                    found = true;
+                    if (forward) {
+                        break;
+                    }
+                } else if (!forward) {
+                    break;
+                }
+            }
+            return found;
+        }
+
+        for (int start = 0; start + literal.length <= textLength; start++) {
+            if (forward ? columns[start] < col : columns[start] >= col) {
+                if (forward) {
+                    continue;
+                }
+                break;
+            }
+            if (literalAt(start)) {
+                matchStart = start;
+                matchEnd = start + literal.length;
+                found = true;
+                if (forward) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    private boolean literalAt(int start) {
+        for (int i = 0; i < literal.length; i++) {
+            char ch = text[start + i];
+            if ((ignoreCase ? Character.toLowerCase(ch) : ch) != literal[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // per-character lower case, the same folding the index uses
+    private static char[] fold(String query) {
+        char[] folded = new char[query.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = Character.toLowerCase(query.charAt(i));
+        }
+        return folded;
+    }
+
+    private int columnAt(int pos) {
+        return pos < textLength ? columns[pos] : width;
+    }
+
+    private SearchResult result(int row) {
+        int endColumn;
+        if (matchEnd == matchStart) {
+            endColumn = columnAt(matchStart);
+        } else {
+            int last = columns[matchEnd - 1];
+            endColumn = Math.min(width, last + (Cell.isWideCharacter(text[matchEnd - 1]) ? 2 : 1));
+        }
+        return new SearchResult(row, columnAt(matchStart), endColumn);
+    }
+}
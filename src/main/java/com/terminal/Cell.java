@@ -3,37 +3,38 @@ package com.terminal;
 /**
  * Represents a single character cell in the terminal buffer.
  * Each cell contains a character, visual attributes, and width information.
+ * Attributes are held as an {@link AttributePalette} id, so cells never copy them.
  */
 public class Cell {
     private char character;
-    private CellAttributes attributes;
+    private int attributeId;
     private boolean isWide;  //Bonus: true for CJK characters that occupy 2 cells
 
     public Cell() {
         this.character = ' ';
-        this.attributes = new CellAttributes();
+        this.attributeId = AttributePalette.DEFAULT_ID;
         this.isWide = false;
     }
 
     public Cell(char character, CellAttributes attributes) {
+        this(character, AttributePalette.idOf(attributes));
+    }
+
+    Cell(char character, int attributeId) {
         this.character = character;
-        this.attributes = attributes.copy();
+        this.attributeId = attributeId;
         this.isWide = isWideCharacter(character);
     }
 
     public Cell copy() {
-        Cell cell = new Cell();
-        cell.character = this.character;
-        cell.attributes = this.attributes.copy();
-        cell.isWide = this.isWide;
-        return cell;
+        return new Cell(character, attributeId);
     }
 
     /**
      * Checks if a character is wide (occupies 2 terminal cells).
      * Covers CJK ideographs and fullwidth forms.
      */
-    private static boolean isWideCharacter(char ch) {
+    static boolean isWideCharacter(char ch) {
         int codePoint = (int) ch;
         return (codePoint >= 0x1100 && codePoint <= 0x115F) ||  // Hangul Jamo
                 (codePoint >= 0x2E80 && codePoint <= 0x9FFF) ||  // CJK Unified Ideographs
@@ -45,8 +46,15 @@ public class Cell {
         return character;
     }
 
+    /**
+     * Returns the shared, immutable attributes of this cell.
+     */
     public CellAttributes getAttributes() {
-        return attributes;
+        return AttributePalette.get(attributeId);
+    }
+
+    int getAttributeId() {
+        return attributeId;
     }
 
     public boolean isWide() {
@@ -59,6 +67,6 @@ public class Cell {
     }
 
     public void setAttributes(CellAttributes attributes) {
-        this.attributes = attributes.copy();
+        this.attributeId = AttributePalette.idOf(attributes);
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,14 @@
 package com.terminal;
 
+import java.util.Objects;
+
 /**
  * Represents the visual attributes of a terminal cell (color and style).
- * Uses defensive copying to prevent shared mutable state.
+ *
+ * The buffer itself stores attributes as ids from {@link AttributePalette}.
+ * Instances handed out by the buffer are the palette's shared entries and are
+ * frozen - calling a setter on them throws. Use {@link #copy()} to get a
+ * mutable instance.
  */
 public class CellAttributes {
 
@@ -17,6 +23,7 @@ public class CellAttributes {
         private boolean bold;
         private boolean italic;
         private boolean underline;
+        private boolean frozen;
 
         public Style() {
             this(false, false, false);
@@ -36,14 +43,34 @@ public class CellAttributes {
         public boolean isItalic() { return italic; }
         public boolean isUnderline() { return underline; }
 
-        public void setBold(boolean bold) { this.bold = bold; }
-        public void setItalic(boolean italic) { this.italic = italic; }
-        public void setUnderline(boolean underline) { this.underline = underline; }
+        public void setBold(boolean bold) { checkMutable(); this.bold = bold; }
+        public void setItalic(boolean italic) { checkMutable(); this.italic = italic; }
+        public void setUnderline(boolean underline) { checkMutable(); this.underline = underline; }
+
+        private void checkMutable() {
+            if (frozen) {
+                throw new UnsupportedOperationException("Shared style is immutable, use copy()");
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Style)) return false;
+            Style other = (Style) o;
+            return bold == other.bold && italic == other.italic && underline == other.underline;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bold, italic, underline);
+        }
     }
 
     private Color foreground;
     private Color background;
     private Style style;
+    private boolean frozen;
 
     public CellAttributes() {
         this.foreground = Color.DEFAULT;
@@ -57,14 +84,62 @@ public class CellAttributes {
         this.style = style.copy();
     }
 
+    /**
+     * Returns the shared, frozen attributes for an attribute id, as passed to a
+     * {@link CellVisitor} or filled in by {@link TerminalBuffer#copyRow}. Ids are
+     * small and equal ids mean equal attributes, so a renderer can cache whatever it
+     * derives from them in an array of {@link #idCount()} entries.
+     */
+    public static CellAttributes forId(int attributeId) {
+        if (attributeId < 0 || attributeId >= AttributePalette.SIZE) {
+            throw new IllegalArgumentException("Unknown attribute id: " + attributeId);
+        }
+        return AttributePalette.get(attributeId);
+    }
+
+    /**
+     * Number of attribute ids; every id is in [0, idCount()).
+     */
+    public static int idCount() {
+        return AttributePalette.SIZE;
+    }
+
     public CellAttributes copy() {
         return new CellAttributes(foreground, background, style);
     }
 
+    /**
+     * Marks this instance (and its style) read-only. Used for the palette's shared entries.
+     */
+    CellAttributes freeze() {
+        this.frozen = true;
+        this.style.frozen = true;
+        return this;
+    }
+
     public Color getForeground() { return foreground; }
     public Color getBackground() { return background; }
     public Style getStyle() { return style; }
 
-    public void setForeground(Color foreground) { this.foreground = foreground; }
-    public void setBackground(Color background) { this.background = background; }
-}
\ No newline at end of file
+    public void setForeground(Color foreground) { checkMutable(); this.foreground = foreground; }
+    public void setBackground(Color background) { checkMutable(); this.background = background; }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Shared attributes are immutable, use copy()");
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CellAttributes)) return false;
+        CellAttributes other = (CellAttributes) o;
+        return foreground == other.foreground && background == other.background && style.equals(other.style);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(foreground, background, style);
+    }
+}
@@ -0,0 +1,16 @@
+package com.terminal;
+
+/**
+ * Receives cells one at a time as primitives, see
+ * {@link TerminalBuffer#forEachCell(int, int, CellVisitor)}. Nothing is allocated
+ * per cell, so a renderer can walk a whole frame without producing garbage.
+ */
+@FunctionalInterface
+public interface CellVisitor {
+
+    /**
+     * @param row         row in buffer coordinates - negative rows are scrollback
+     * @param attributeId the cell's attributes, resolved with {@link CellAttributes#forId(int)}
+     */
+    void visit(int row, int col, char ch, int attributeId);
+}
@@ -0,0 +1,217 @@
+package com.terminal;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, compact encoding of a scrollback line.
+ *
+ * Trailing blank cells are dropped, attributes are stored as runs of
+ * (end column, attribute id) instead of one id per cell, and text is packed one
+ * byte per character when it all fits in Latin-1 (two bytes otherwise).
+ * Everything lives in a single byte array: varint-encoded runs followed by the
+ * text. Cells are decoded on read. The saving grows with the amount of trailing
+ * blank space - a short log line on a wide terminal shrinks by well over 10x.
+ */
+final class CompactLine implements LineView {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int width;
+    private final int length;      // cells actually stored, the rest are default blanks
+    private final int textOffset;  // runs occupy data[0, textOffset), text follows
+    private final boolean utf16;
+    private final boolean wrapped;
+    private final byte[] data;
+
+    private CompactLine(int width, int length, int textOffset, boolean utf16, boolean wrapped, byte[] data) {
+        this.width = width;
+        this.length = length;
+        this.textOffset = textOffset;
+        this.utf16 = utf16;
+        this.wrapped = wrapped;
+        this.data = data;
+    }
+
+    static CompactLine encode(LineView line) {
+        int width = line.getWidth();
+        int length = line.contentLength();
+        if (length == 0) {
+            return new CompactLine(width, 0, 0, false, line.isWrapped(), EMPTY);
+        }
+
+        boolean utf16 = false;
+        boolean allDefault = true;
+        int runBytes = 0;
+        for (int i = 0; i < length; i++) {
+            if (line.getChar(i) > 0xFF) {
+                utf16 = true;
+            }
+            int attr = line.getAttr(i);
+            if (attr != AttributePalette.DEFAULT_ID) {
+                allDefault = false;
+            }
+            if (i == length - 1 || line.getAttr(i + 1) != attr) {
+                runBytes += varintSize(i + 1) + varintSize(attr);
+            }
+        }
+        if (allDefault) {
+            runBytes = 0;  // no runs means every stored cell has default attributes
+        }
+
+        byte[] data = new byte[runBytes + (utf16 ? length * 2 : length)];
+        int pos = 0;
+        if (!allDefault) {
+            for (int i = 0; i < length; i++) {
+                int attr = line.getAttr(i);
+                if (i == length - 1 || line.getAttr(i + 1) != attr) {
+                    pos = putVarint(data, pos, i + 1);
+                    pos = putVarint(data, pos, attr);
+                }
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            char ch = line.getChar(i);
+            if (utf16) {
+                data[pos++] = (byte) (ch >>> 8);
+                data[pos++] = (byte) ch;
+            } else {
+                data[pos++] = (byte) ch;
+            }
+        }
+        return new CompactLine(width, length, runBytes, utf16, line.isWrapped(), data);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public boolean isWrapped() {
+        return wrapped;
+    }
+
+    @Override
+    public int contentLength() {
+        return length;
+    }
+
+    @Override
+    public char getChar(int col) {
+        if (col >= length) {
+            return ' ';
+        }
+        if (utf16) {
+            int pos = textOffset + 2 * col;
+            return (char) (((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF));
+        }
+        return (char) (data[textOffset + col] & 0xFF);
+    }
+
+    @Override
+    public int getAttr(int col) {
+        if (col >= length) {
+            return AttributePalette.DEFAULT_ID;
+        }
+        // runs are few, so scan them in order
+        int[] pos = new int[1];
+        while (pos[0] < textOffset) {
+            int end = readVarint(pos);
+            int attr = readVarint(pos);
+            if (col < end) {
+                return attr;
+            }
+        }
+        return AttributePalette.DEFAULT_ID;
+    }
+
+    @Override
+    public void copyInto(char[] chars, int[] attrs, int width) {
+        int stored = Math.min(width, length);
+        int col = 0;
+        int[] pos = new int[1];
+        // one pass over the runs, instead of scanning them for every cell
+        while (col < stored) {
+            int end = stored;
+            int attr = AttributePalette.DEFAULT_ID;
+            if (pos[0] < textOffset) {
+                end = readVarint(pos);
+                attr = readVarint(pos);
+            }
+            int runEnd = Math.min(end, stored);
+            Arrays.fill(attrs, col, runEnd, attr);
+            col = runEnd;
+        }
+        for (int i = 0; i < stored; i++) {
+            chars[i] = getChar(i);
+        }
+        Arrays.fill(chars, stored, width, ' ');
+        Arrays.fill(attrs, stored, width, AttributePalette.DEFAULT_ID);
+    }
+
+    @Override
+    public void forEachCell(int row, int width, CellVisitor visitor) {
+        int stored = Math.min(width, length);
+        int col = 0;
+        int[] pos = new int[1];
+        // walk the runs alongside the cells instead of scanning them for every cell
+        while (col < stored) {
+            int end = stored;
+            int attr = AttributePalette.DEFAULT_ID;
+            if (pos[0] < textOffset) {
+                end = readVarint(pos);
+                attr = readVarint(pos);
+            }
+            for (int runEnd = Math.min(end, stored); col < runEnd; col++) {
+                visitor.visit(row, col, getChar(col), attr);
+            }
+        }
+        for (; col < width; col++) {
+            visitor.visit(row, col, ' ', AttributePalette.DEFAULT_ID);
+        }
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // object header and fields, plus the data array (the shared empty one is free)
+        long bytes = 32;
+        if (data.length > 0) {
+            bytes += align(16 + data.length);
+        }
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static int putVarint(byte[] data, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            data[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[pos++] = (byte) value;
+        return pos;
+    }
+
+    // Reads the varint at pos[0] and moves pos[0] past it; a slot rather than a field,
+    // since snapshots may read the same line from other threads
+    private int readVarint(int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,64 @@
+package com.terminal;
+
+/**
+ * What changed on screen since the previous {@link TerminalBuffer#collectDamage()} call.
+ *
+ * Renderers should first apply the scroll hint (move the previous frame up by
+ * {@link #getScrollDelta()} rows), then repaint the damaged spans. Row numbers
+ * are screen rows after the scroll. When {@link #isFullRepaint()} is true the
+ * spans are not meaningful and the whole screen should be redrawn.
+ */
+public final class DamageReport {
+    static final DamageReport EMPTY = new DamageReport(false, 0, new int[0], new int[0], new int[0]);
+
+    private final boolean fullRepaint;
+    private final int scrollDelta;
+    private final int[] rows;
+    private final int[] startCols;
+    private final int[] endCols;
+
+    DamageReport(boolean fullRepaint, int scrollDelta, int[] rows, int[] startCols, int[] endCols) {
+        this.fullRepaint = fullRepaint;
+        this.scrollDelta = scrollDelta;
+        this.rows = rows;
+        this.startCols = startCols;
+        this.endCols = endCols;
+    }
+
+    public boolean isFullRepaint() {
+        return fullRepaint;
+    }
+
+    /**
+     * Number of rows the screen content moved up before the spans were damaged.
+     */
+    public int getScrollDelta() {
+        return scrollDelta;
+    }
+
+    public boolean isEmpty() {
+        return !fullRepaint && scrollDelta == 0 && rows.length == 0;
+    }
+
+    public int getSpanCount() {
+        return rows.length;
+    }
+
+    public int getRow(int span) {
+        return rows[span];
+    }
+
+    /**
+     * First damaged column of the span (inclusive).
+     */
+    public int getStartCol(int span) {
+        return startCols[span];
+    }
+
+    /**
+     * End of the span (exclusive).
+     */
+    public int getEndCol(int span) {
+        return endCols[span];
+    }
+}
@@ -0,0 +1,124 @@
+package com.terminal;
+
+import java.util.Arrays;
+
+/**
+ * Records which screen cells changed since damage was last collected.
+ *
+ * Keeps one dirty column span per row. Rows are stored in a ring like
+ * {@link Screen}, so a full-screen scroll shifts existing damage up in O(1).
+ */
+class DamageTracker {
+    private static final int CLEAN = Integer.MAX_VALUE;
+
+    private int width;
+    private int[] from;
+    private int[] to;
+    private int top;
+    private int scrollDelta;
+    private boolean fullRepaint;
+    private boolean dirty;
+
+    DamageTracker(int width, int height) {
+        reset(width, height);
+        // a fresh buffer has never been drawn
+        fullRepaint = true;
+    }
+
+    void mark(int row, int fromCol, int toCol) {
+        if (fullRepaint || fromCol >= toCol) {
+            return;
+        }
+        int slot = slot(row);
+        from[slot] = Math.min(from[slot], fromCol);
+        to[slot] = Math.max(to[slot], toCol);
+        dirty = true;
+    }
+
+    void markRow(int row) {
+        mark(row, 0, width);
+    }
+
+    /**
+     * Records that the whole screen moved up one row. Existing damage moves with
+     * the content and the row opened at the bottom is fully damaged.
+     */
+    void scrolled() {
+        if (fullRepaint) {
+            return;
+        }
+        if (++scrollDelta >= from.length) {
+            markAll();
+            return;
+        }
+        // the old top row becomes the new bottom row
+        from[top] = CLEAN;
+        to[top] = 0;
+        top = (top + 1) % from.length;
+        markRow(from.length - 1);
+    }
+
+    void markAll() {
+        fullRepaint = true;
+    }
+
+    void resize(int newWidth, int newHeight) {
+        reset(newWidth, newHeight);
+        fullRepaint = true;
+    }
+
+    /**
+     * Returns the damage recorded so far and starts tracking from a clean state.
+     */
+    DamageReport collect() {
+        if (!fullRepaint && !dirty && scrollDelta == 0) {
+            return DamageReport.EMPTY;
+        }
+        DamageReport report;
+        if (fullRepaint) {
+            report = new DamageReport(true, 0, new int[0], new int[0], new int[0]);
+        } else {
+            int count = 0;
+            for (int row = 0; row < from.length; row++) {
+                if (from[slot(row)] != CLEAN) {
+                    count++;
+                }
+            }
+            int[] rows = new int[count];
+            int[] startCols = new int[count];
+            int[] endCols = new int[count];
+            int i = 0;
+            for (int row = 0; row < from.length; row++) {
+                int slot = slot(row);
+                if (from[slot] != CLEAN) {
+                    rows[i] = row;
+                    startCols[i] = from[slot];
+                    endCols[i] = to[slot];
+                    i++;
+                }
+            }
+            report = new DamageReport(false, scrollDelta, rows, startCols, endCols);
+        }
+        reset(width, from.length);
+        return report;
+    }
+
+    private void reset(int newWidth, int newHeight) {
+        width = newWidth;
+        if (from == null || from.length != newHeight) {
+            from = new int[newHeight];
+            to = new int[newHeight];
+        }
+        Arrays.fill(from, CLEAN);
+        Arrays.fill(to, 0);
+        top = 0;
+        scrollDelta = 0;
+        fullRepaint = false;
+        dirty = false;
+    }
+
+    private int slot(int row) {
+        int slot = top + row;
+        return slot < from.length ? slot : slot - from.length;
+    }
+}
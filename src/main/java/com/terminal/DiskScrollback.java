@@ -0,0 +1,265 @@
+package com.terminal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cold scrollback tier - lines serialized into memory-mapped, append-only segment files.
+ *
+ * Each segment holds up to {@link #LINES_PER_SEGMENT} lines. Its header is a table
+ * of record offsets, followed by the records themselves:
+ * {@code [int width][int length][char x length][int attribute id x length]}, where
+ * trailing blank cells are not stored and the top bit of the length marks a soft
+ * wrap. The only heap cost is one small object per segment, so heap use stays flat
+ * however deep the history gets.
+ *
+ * Old history is trimmed logically line by line, but disk space is reclaimed a whole
+ * segment at a time once every line in it has been trimmed.
+ */
+class DiskScrollback implements AutoCloseable {
+    static final int LINES_PER_SEGMENT = 4096;
+    private static final int HEADER_BYTES = LINES_PER_SEGMENT * Integer.BYTES;
+    private static final int SEGMENT_BYTES = 16 * 1024 * 1024;
+    static final int WRAPPED = 0x80000000;
+
+    private static final class Segment {
+        final long firstSeq;
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        int count;
+        int dataEnd = HEADER_BYTES;
+
+        Segment(long firstSeq, Path file, FileChannel channel, MappedByteBuffer map) {
+            this.firstSeq = firstSeq;
+            this.file = file;
+            this.channel = channel;
+            this.map = map;
+        }
+    }
+
+    private final Path directory;
+    private final List<Segment> segments;
+    private final boolean readOnly;
+    private long firstSeq;  // oldest line still in history
+    private long endSeq;    // sequence number the next appended line gets
+
+    DiskScrollback(Path directory) {
+        this.directory = directory;
+        this.segments = new ArrayList<>();
+        this.readOnly = false;
+    }
+
+    // read-only view used by snapshots
+    private DiskScrollback(List<Segment> segments, long firstSeq, long endSeq) {
+        this.directory = null;
+        this.segments = segments;
+        this.readOnly = true;
+        this.firstSeq = firstSeq;
+        this.endSeq = endSeq;
+    }
+
+    int size() {
+        return (int) (endSeq - firstSeq);
+    }
+
+    /**
+     * Serializes a line as the newest entry. The line itself is not retained.
+     */
+    void append(LineView line) {
+        int width = line.getWidth();
+        int length = line.contentLength();
+        int recordBytes = 2 * Integer.BYTES + length * (Character.BYTES + Integer.BYTES);
+
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.count == LINES_PER_SEGMENT
+                || segment.dataEnd + recordBytes > segment.map.capacity()) {
+            segment = newSegment(recordBytes);
+        }
+
+        MappedByteBuffer map = segment.map;
+        int pos = segment.dataEnd;
+        map.putInt(segment.count * Integer.BYTES, pos);
+        map.putInt(pos, width);
+        map.putInt(pos + 4, line.isWrapped() ? length | WRAPPED : length);
+        int charPos = pos + 8;
+        for (int i = 0; i < length; i++) {
+            map.putChar(charPos + i * Character.BYTES, line.getChar(i));
+        }
+        int attrPos = charPos + length * Character.BYTES;
+        for (int i = 0; i < length; i++) {
+            map.putInt(attrPos + i * Integer.BYTES, line.getAttr(i));
+        }
+        segment.dataEnd = pos + recordBytes;
+        segment.count++;
+        endSeq++;
+    }
+
+    /**
+     * Drops the oldest lines until at most maxLines remain, deleting segments
+     * that no longer hold any live line.
+     */
+    void trimTo(long maxLines) {
+        if (endSeq - firstSeq > maxLines) {
+            firstSeq = endSeq - Math.max(0, maxLines);
+        }
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.get(0);
+            if (oldest.firstSeq + oldest.count > firstSeq) {
+                break;
+            }
+            segments.remove(0);
+            release(oldest);
+        }
+    }
+
+    char getChar(int index, int col) {
+        Segment segment = segmentOf(index);
+        int pos = recordPos(segment, index);
+        int length = storedLength(segment, pos);
+        return col < length ? segment.map.getChar(pos + 8 + col * Character.BYTES) : ' ';
+    }
+
+    int getAttr(int index, int col) {
+        Segment segment = segmentOf(index);
+        int pos = recordPos(segment, index);
+        int length = storedLength(segment, pos);
+        if (col >= length) {
+            return AttributePalette.DEFAULT_ID;
+        }
+        return segment.map.getInt(pos + 8 + length * Character.BYTES + col * Integer.BYTES);
+    }
+
+    boolean isWrapped(int index) {
+        Segment segment = segmentOf(index);
+        return (segment.map.getInt(recordPos(segment, index) + 4) & WRAPPED) != 0;
+    }
+
+    /**
+     * Width the line had when it was stored.
+     */
+    int width(int index) {
+        Segment segment = segmentOf(index);
+        return segment.map.getInt(recordPos(segment, index));
+    }
+
+    /**
+     * Copies a line's first {@code width} cells into the given arrays, padding with
+     * default blanks past the stored cells.
+     */
+    void copyInto(int index, char[] chars, int[] attrs, int width) {
+        Segment segment = segmentOf(index);
+        int pos = recordPos(segment, index);
+        int stored = storedLength(segment, pos);
+        int length = Math.min(width, stored);
+        int attrPos = pos + 8 + stored * Character.BYTES;
+        for (int i = 0; i < length; i++) {
+            chars[i] = segment.map.getChar(pos + 8 + i * Character.BYTES);
+            attrs[i] = segment.map.getInt(attrPos + i * Integer.BYTES);
+        }
+        for (int i = length; i < width; i++) {
+            chars[i] = ' ';
+            attrs[i] = AttributePalette.DEFAULT_ID;
+        }
+    }
+
+    /**
+     * Returns the stored text of a line, padded with blanks or truncated to the given width.
+     */
+    String asString(int index, int width) {
+        Segment segment = segmentOf(index);
+        int pos = recordPos(segment, index);
+        int length = Math.min(width, storedLength(segment, pos));
+        char[] chars = new char[width];
+        for (int i = 0; i < length; i++) {
+            chars[i] = segment.map.getChar(pos + 8 + i * Character.BYTES);
+        }
+        for (int i = length; i < width; i++) {
+            chars[i] = ' ';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns a read-only view of the current contents. Appends made afterwards are not
+     * visible to it, and segments it references stay mapped even if this store deletes
+     * their files.
+     */
+    DiskScrollback snapshot() {
+        return new DiskScrollback(new ArrayList<>(segments), firstSeq, endSeq);
+    }
+
+    void clear() {
+        firstSeq = endSeq;
+        trimTo(0);
+    }
+
+    @Override
+    public void close() {
+        if (readOnly) {
+            return;
+        }
+        for (Segment segment : segments) {
+            release(segment);
+        }
+        segments.clear();
+        firstSeq = endSeq;
+    }
+
+    private Segment newSegment(int recordBytes) {
+        try {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "scrollback-", ".seg");
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int size = Math.max(SEGMENT_BYTES, HEADER_BYTES + recordBytes);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            Segment segment = new Segment(endSeq, file, channel, map);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create scrollback segment in " + directory, e);
+        }
+    }
+
+    // The mapping stays valid for snapshots still holding the segment after the channel closes
+    private static void release(Segment segment) {
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete scrollback segment " + segment.file, e);
+        }
+    }
+
+    private Segment segmentOf(int index) {
+        long seq = firstSeq + index;
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).firstSeq <= seq) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    private static int storedLength(Segment segment, int pos) {
+        return segment.map.getInt(pos + 4) & ~WRAPPED;
+    }
+
+    private int recordPos(Segment segment, int index) {
+        int lineInSegment = (int) (firstSeq + index - segment.firstSeq);
+        return segment.map.getInt(lineInSegment * Integer.BYTES);
+    }
+}
@@ -0,0 +1,22 @@
+package com.terminal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for exporting buffer content ({@link TerminalBuffer#getAllContent()} and
+ * exportContent). Costs next to nothing unless a recording enables it.
+ */
+@Name("com.terminal.Export")
+@Label("Terminal Export")
+@Category("Terminal")
+@Description("Export of a range of terminal rows as text")
+final class ExportEvent extends jdk.jfr.Event {
+    @Label("Rows")
+    int rows;
+
+    @Label("With Attributes")
+    boolean withAttributes;
+}
@@ -0,0 +1,141 @@
+package com.terminal;
+
+import java.io.IOException;
+
+/**
+ * Streams a buffer's screen to a remote terminal as a series of frame updates.
+ *
+ * Each frame is a run of VT escape sequences that any terminal (a browser terminal,
+ * or {@link VtParser} feeding another buffer) can apply on top of the previous
+ * frame. A delta frame is built from the buffer's damage report: a full-screen
+ * scroll becomes one SU sequence, each damaged span is written after a cursor
+ * move, with attribute changes as SGR and blanks at the end of a row as an erase,
+ * and the frame ends with the cursor position.
+ * Its cost follows the damage, not the screen size.
+ *
+ * A keyframe erases the remote screen and redraws every row. Keyframes are sent
+ * for the first frame, after a resize or clear, when requested (e.g. a client
+ * reconnects) and every {@code keyframeInterval} frames, so a client that missed
+ * something catches up.
+ *
+ * The encoder takes over the buffer's damage tracking: nothing else should call
+ * {@link TerminalBuffer#collectDamage()}. Use it from the thread writing to the buffer.
+ */
+public final class FrameEncoder {
+    private static final int ERASE_LENGTH = 3;  // ESC [ K
+
+    private final TerminalBuffer buffer;
+    private final TextExporter out;
+    private final int keyframeInterval;
+
+    private boolean keyframeRequested = true;
+    private int framesSinceKeyframe;
+    private int lastCursorRow = -1;
+    private int lastCursorCol = -1;
+
+    private long frames;
+    private long keyframes;
+
+    /**
+     * @param keyframeInterval send a keyframe after this many delta frames; 0 sends
+     *                         keyframes only when needed or requested
+     */
+    public FrameEncoder(TerminalBuffer buffer, Appendable out, int keyframeInterval) {
+        if (keyframeInterval < 0) {
+            throw new IllegalArgumentException("Keyframe interval must not be negative: " + keyframeInterval);
+        }
+        this.buffer = buffer;
+        this.out = new TextExporter(out, true);
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Makes the next frame a keyframe.
+     */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Writes the changes since the previous frame and flushes them to the output.
+     *
+     * @return true if a frame was written, false if nothing changed
+     */
+    public boolean encodeFrame() throws IOException {
+        DamageReport damage = buffer.collectDamage();
+        boolean keyframe = keyframeRequested || damage.isFullRepaint()
+                || (keyframeInterval > 0 && framesSinceKeyframe >= keyframeInterval);
+        int cursorRow = buffer.getCursorRow();
+        int cursorCol = Math.min(buffer.getCursorCol(), buffer.getWidth() - 1);
+        if (!keyframe && damage.isEmpty() && cursorRow == lastCursorRow && cursorCol == lastCursorCol) {
+            return false;
+        }
+
+        if (keyframe) {
+            writeKeyframe();
+            keyframeRequested = false;
+            framesSinceKeyframe = 0;
+            keyframes++;
+        } else {
+            writeDelta(damage);
+            framesSinceKeyframe++;
+        }
+        out.writeCursorPosition(cursorRow, Math.max(0, cursorCol));
+        out.flush();
+        lastCursorRow = cursorRow;
+        lastCursorCol = cursorCol;
+        frames++;
+        return true;
+    }
+
+    /**
+     * Frames written so far, keyframes included.
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getKeyframeCount() {
+        return keyframes;
+    }
+
+    private void writeKeyframe() throws IOException {
+        out.writeClearScreen();
+        for (int row = 0; row < buffer.getHeight(); row++) {
+            Line line = buffer.screenLine(row);
+            int length = line.contentLength();
+            if (length > 0) {
+                out.writeCursorPosition(row, 0);
+                out.writeSpan(line, row, 0, length);
+            }
+        }
+    }
+
+    private void writeDelta(DamageReport damage) throws IOException {
+        if (damage.getScrollDelta() > 0) {
+            out.writeScrollUp(damage.getScrollDelta());
+        }
+        for (int span = 0; span < damage.getSpanCount(); span++) {
+            int row = damage.getRow(span);
+            Line line = buffer.screenLine(row);
+            int start = damage.getStartCol(span);
+            int end = Math.min(damage.getEndCol(span), line.getWidth());
+            // a span starting on the blank half of a wide character redraws the character
+            if (TextExporter.isWidePlaceholder(line, start)) {
+                start--;
+            }
+            if (start >= end) {
+                continue;
+            }
+            out.writeCursorPosition(row, start);
+            // blanks up to the end of the row are cheaper to send as an erase
+            int length = Math.max(start, line.contentLength());
+            if (end == line.getWidth() && length < end - ERASE_LENGTH) {
+                out.writeSpan(line, row, start, length);
+                out.writeEraseToEndOfLine();
+            } else {
+                out.writeSpan(line, row, start, end);
+            }
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package com.terminal;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scrollback history as seen by the buffer: an in-memory hot window, optionally
+ * backed by a disk tier for older lines.
+ *
+ * Index 0 is the oldest line. Without a disk tier this is just the hot
+ * {@link Scrollback} ring. With one, lines pushed out of the hot window are
+ * serialized into {@link DiskScrollback} and read back from there on access.
+ * When compression is on, lines entering the hot window are stored as
+ * {@link CompactLine}s and the original rows go straight back to the line pool.
+ *
+ * Every line gets a sequence number when it is added; the oldest line still held
+ * is {@link #firstSeq()}. An optional {@link SearchIndex} is kept in step with it.
+ *
+ * The estimated heap bytes of the in-memory lines are kept up to date as lines come
+ * and go, and an optional byte limit evicts the oldest lines (to the disk tier when
+ * there is one) on top of the line limit.
+ */
+class History implements AutoCloseable {
+    private final Scrollback hot;
+    private final DiskScrollback cold;  // null when history is heap-only
+    private final int maxLines;
+
+    private boolean compress;
+    // for the compression ratio: size of compacted lines as plain Lines vs. as stored
+    private long compactRawBytes;
+    private long compactStoredBytes;
+
+    private long heapBytes;     // estimated bytes of the lines in the hot window
+    private long maxBytes = Long.MAX_VALUE;
+
+    private long nextSeq;       // sequence number the next added line gets
+    private SearchIndex index;  // null unless search indexing is on
+    private boolean indexPending;  // indexing is on, but the index is built on first use
+
+    History(int maxLines) {
+        this.hot = new Scrollback(maxLines);
+        this.cold = null;
+        this.maxLines = maxLines;
+    }
+
+    History(int maxLines, int hotLines, Path spillDirectory) {
+        int hotCapacity = Math.max(0, Math.min(hotLines, maxLines));
+        this.hot = new Scrollback(hotCapacity);
+        this.cold = new DiskScrollback(spillDirectory);
+        this.maxLines = maxLines;
+    }
+
+    private History(Scrollback hot, DiskScrollback cold, long nextSeq) {
+        this.hot = hot;
+        this.cold = cold;
+        this.maxLines = 0;
+        this.nextSeq = nextSeq;
+    }
+
+    int size() {
+        return coldSize() + hot.size();
+    }
+
+    /**
+     * Sequence number of the line at index 0. Index i holds line firstSeq() + i.
+     */
+    long firstSeq() {
+        return nextSeq - size();
+    }
+
+    /**
+     * Turns the search index on or off. Turning it on indexes the current history.
+     */
+    void setIndexed(boolean indexed) {
+        if (!indexed) {
+            index = null;
+            indexPending = false;
+        } else if (index == null) {
+            indexPending = false;
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * Turns the search index on without building it yet; the first {@link #index()}
+     * call indexes the history. Until then lines are added without being indexed.
+     */
+    void setIndexedLazily() {
+        if (index == null) {
+            indexPending = true;
+        }
+    }
+
+    boolean isIndexed() {
+        return index != null || indexPending;
+    }
+
+    /**
+     * The search index, or null when indexing is off. Builds it if it was turned on lazily.
+     */
+    SearchIndex index() {
+        if (indexPending) {
+            indexPending = false;
+            rebuildIndex();
+        }
+        return index;
+    }
+
+    void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * Plain-line size of the compacted lines in memory divided by their stored size,
+     * or 1 when nothing is compacted.
+     */
+    double compressionRatio() {
+        return compactStoredBytes == 0 ? 1.0 : (double) compactRawBytes / compactStoredBytes;
+    }
+
+    /**
+     * Estimated heap bytes of the in-memory lines; lines on disk only cost their mapping.
+     */
+    long heapBytes() {
+        return heapBytes;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the byte limit for in-memory lines and evicts down to it right away.
+     */
+    void setMaxBytes(long maxBytes, LinePool pool) {
+        this.maxBytes = maxBytes;
+        while (heapBytes > maxBytes && hot.size() > 0) {
+            boolean shared = hot.isShared(0);
+            LineView line = evictOldest();
+            if (!shared && line instanceof Line) {
+                pool.release((Line) line);
+            }
+        }
+        if (index != null) {
+            index.evictBefore(firstSeq());
+        }
+    }
+
+    char getChar(int index, int col) {
+        int coldSize = coldSize();
+        if (index < coldSize) {
+            return cold.getChar(index, col);
+        }
+        LineView line = hot.get(index - coldSize);
+        return col < line.getWidth() ? line.getChar(col) : ' ';
+    }
+
+    int getAttr(int index, int col) {
+        int coldSize = coldSize();
+        if (index < coldSize) {
+            return cold.getAttr(index, col);
+        }
+        LineView line = hot.get(index - coldSize);
+        return col < line.getWidth() ? line.getAttr(col) : AttributePalette.DEFAULT_ID;
+    }
+
+    /**
+     * Copies the first {@code width} cells of a line into the given arrays, padding
+     * with default blanks when the line is narrower.
+     */
+    void copyInto(int index, char[] chars, int[] attrs, int width) {
+        int coldSize = coldSize();
+        if (index < coldSize) {
+            cold.copyInto(index, chars, attrs, width);
+        } else {
+            hot.get(index - coldSize).copyInto(chars, attrs, width);
+        }
+    }
+
+    /**
+     * Passes a line's cells to the visitor as row {@code row}, padded or truncated to
+     * the given width.
+     */
+    void forEachCell(int index, int row, int width, CellVisitor visitor) {
+        int coldSize = coldSize();
+        if (index < coldSize) {
+            for (int col = 0; col < width; col++) {
+                visitor.visit(row, col, cold.getChar(index, col), cold.getAttr(index, col));
+            }
+        } else {
+            hot.get(index - coldSize).forEachCell(row, width, visitor);
+        }
+    }
+
+    boolean isWrapped(int index) {
+        int coldSize = coldSize();
+        return index < coldSize ? cold.isWrapped(index) : hot.get(index - coldSize).isWrapped();
+    }
+
+    /**
+     * Returns the text of a line, padded or truncated to the given width.
+     */
+    String asString(int index, int width) {
+        int coldSize = coldSize();
+        if (index < coldSize) {
+            return cold.asString(index, width);
+        }
+        LineView line = hot.get(index - coldSize);
+        if (line instanceof Line && line.getWidth() == width) {
+            return ((Line) line).asString();
+        }
+        char[] chars = new char[width];
+        int stored = Math.min(width, line.getWidth());
+        for (int i = 0; i < stored; i++) {
+            chars[i] = line.getChar(i);
+        }
+        for (int i = stored; i < width; i++) {
+            chars[i] = ' ';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Appends a line as the newest history entry.
+     *
+     * @return a line the buffer no longer references and may reuse, or null
+     */
+    Line add(Line line) {
+        if (index != null) {
+            if (index.needsRebase(nextSeq)) {
+                rebuildIndex();
+            }
+            index.add(nextSeq, line);
+        }
+        nextSeq++;
+
+        Line reusable;
+        LineView stored;
+        if (compress) {
+            CompactLine compact = CompactLine.encode(line);
+            compactRawBytes += line.estimatedBytes();
+            compactStoredBytes += compact.estimatedBytes();
+            stored = compact;
+            reusable = line.isShared() ? null : line;
+        } else {
+            stored = line;
+            reusable = null;
+        }
+
+        boolean evictedReusable = hot.capacity() == 0
+                ? !line.isShared()
+                : hot.size() == hot.capacity() && !hot.isShared(0);
+        LineView evicted = hot.add(stored);
+        heapBytes += stored.estimatedBytes();
+        if (evicted != null) {
+            heapBytes -= evicted.estimatedBytes();
+            forgetCompact(evicted);
+            if (cold != null) {
+                cold.append(evicted);
+                cold.trimTo(Math.max(0, maxLines - hot.size()));
+            }
+            if (reusable == null && evictedReusable && evicted instanceof Line) {
+                reusable = (Line) evicted;
+            }
+        }
+        while (heapBytes > maxBytes && hot.size() > 0) {
+            boolean shared = hot.isShared(0);
+            LineView oldest = evictOldest();
+            if (reusable == null && !shared && oldest instanceof Line) {
+                reusable = (Line) oldest;
+            }
+        }
+        if (index != null) {
+            index.evictBefore(firstSeq());
+        }
+        return reusable;
+    }
+
+    /**
+     * Appends a line read back from a saved session to a heap-only history that has
+     * room for it. The line is stored as is - not compressed, indexed or pooled.
+     */
+    void restore(LineView line) {
+        hot.add(line);
+        heapBytes += line.estimatedBytes();
+        nextSeq++;
+    }
+
+    /**
+     * Re-encodes the plain lines in memory as {@link CompactLine}s, handing reusable
+     * ones to the pool. Lines a snapshot may still see stay untouched for it.
+     */
+    void compactAll(LinePool pool) {
+        for (int i = 0; i < hot.size(); i++) {
+            LineView line = hot.get(i);
+            if (line instanceof Line) {
+                boolean shared = hot.isShared(i);
+                CompactLine compact = CompactLine.encode(line);
+                compactRawBytes += line.estimatedBytes();
+                compactStoredBytes += compact.estimatedBytes();
+                heapBytes += compact.estimatedBytes() - line.estimatedBytes();
+                hot.set(i, compact);
+                if (!shared) {
+                    pool.release((Line) line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the oldest in-memory lines to the disk tier until at most keepInMemory
+     * remain. New lines still enter memory first.
+     *
+     * @return false if this history has no disk tier
+     */
+    boolean spill(int keepInMemory, LinePool pool) {
+        if (cold == null) {
+            return false;
+        }
+        while (hot.size() > Math.max(0, keepInMemory)) {
+            boolean shared = hot.isShared(0);
+            LineView line = removeOldest();
+            cold.append(line);
+            if (!shared && line instanceof Line) {
+                pool.release((Line) line);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops the oldest lines until at least {@code bytes} of heap are freed or the
+     * history is empty. Only heap-only histories are trimmed (or ones whose disk
+     * tier is empty), so lines never go missing from the middle.
+     *
+     * @return the estimated bytes freed
+     */
+    long trimOldest(long bytes, LinePool pool) {
+        if (coldSize() > 0) {
+            return 0;
+        }
+        long freed = 0;
+        while (freed < bytes && hot.size() > 0) {
+            boolean shared = hot.isShared(0);
+            LineView line = removeOldest();
+            freed += line.estimatedBytes();
+            if (!shared && line instanceof Line) {
+                pool.release((Line) line);
+            }
+        }
+        if (index != null) {
+            index.evictBefore(firstSeq());
+        }
+        return freed;
+    }
+
+    /**
+     * Re-wraps the in-memory history to a new width (see {@link Reflow}).
+     *
+     * Lines at the newest end that are soft-wrapped into the screen are taken out
+     * and returned, oldest first, so the caller can re-wrap them together with the
+     * screen rows. Lines a snapshot may still see are never modified - the history
+     * is rebuilt from new lines. Lines on disk keep their stored width and are
+     * padded or truncated when read.
+     */
+    List<LineView> reflow(int newWidth, LinePool pool) {
+        List<LineView> lines = new ArrayList<>(hot.size());
+        for (int i = 0; i < hot.size(); i++) {
+            lines.add(hot.get(i));
+        }
+        int body = lines.size();
+        while (body > 0 && lines.get(body - 1).isWrapped()) {
+            body--;
+        }
+        List<LineView> tail = new ArrayList<>(lines.subList(body, lines.size()));
+        int maxRows = cold == null ? hot.capacity() : Integer.MAX_VALUE;
+        List<Line> rewrapped = Reflow.rewrapAll(lines.subList(0, body), newWidth, maxRows);
+
+        boolean indexed = index != null;
+        index = null;
+        nextSeq -= hot.size();
+        hot.clear();
+        heapBytes = 0;
+        compactRawBytes = 0;
+        compactStoredBytes = 0;
+        for (Line line : rewrapped) {
+            pool.release(add(line));
+        }
+        if (indexed) {
+            rebuildIndex();
+        }
+        return tail;
+    }
+
+    /**
+     * Empties the history, handing reusable in-memory lines to the pool.
+     */
+    void clear(LinePool pool) {
+        for (int i = 0; i < hot.size(); i++) {
+            LineView line = hot.get(i);
+            if (line instanceof Line && !hot.isShared(i)) {
+                pool.release((Line) line);
+            }
+        }
+        hot.clear();
+        heapBytes = 0;
+        compactRawBytes = 0;
+        compactStoredBytes = 0;
+        if (cold != null) {
+            cold.clear();
+        }
+        if (index != null) {
+            index.clear(nextSeq);
+        }
+    }
+
+    /**
+     * Returns a read-only view of the current history without copying it.
+     */
+    History snapshot() {
+        return new History(hot.snapshot(), cold == null ? null : cold.snapshot(), nextSeq);
+    }
+
+    @Override
+    public void close() {
+        if (cold != null) {
+            cold.close();
+        }
+    }
+
+    private void rebuildIndex() {
+        long first = firstSeq();
+        index = new SearchIndex(first);
+        for (int i = 0; i < size(); i++) {
+            index.add(first + i, lineAt(i));
+        }
+    }
+
+    // The line at an index; lines on disk are read into a temporary Line
+    private LineView lineAt(int index) {
+        int coldSize = coldSize();
+        if (index >= coldSize) {
+            return hot.get(index - coldSize);
+        }
+        int width = cold.width(index);
+        Line line = new Line(width);
+        char[] chars = new char[width];
+        int[] attrs = new int[width];
+        cold.copyInto(index, chars, attrs, width);
+        for (int col = 0; col < width; col++) {
+            line.set(col, chars[col], attrs[col]);
+        }
+        line.setWrapped(cold.isWrapped(index));
+        return line;
+    }
+
+    // Takes the oldest line out of the hot window, keeping the byte counts in step
+    private LineView removeOldest() {
+        LineView line = hot.removeOldest();
+        heapBytes -= line.estimatedBytes();
+        forgetCompact(line);
+        return line;
+    }
+
+    // Evicts the oldest in-memory line: into the disk tier when there is one, else it is dropped
+    private LineView evictOldest() {
+        LineView line = removeOldest();
+        if (cold != null) {
+            cold.append(line);
+            cold.trimTo(Math.max(0, maxLines - hot.size()));
+        }
+        return line;
+    }
+
+    private void forgetCompact(LineView line) {
+        if (line instanceof CompactLine) {
+            compactRawBytes -= Line.estimatedBytes(line.getWidth());
+            compactStoredBytes -= line.estimatedBytes();
+        }
+    }
+
+    private int coldSize() {
+        return cold == null ? 0 : cold.size();
+    }
+}
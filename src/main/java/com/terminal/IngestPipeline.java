@@ -0,0 +1,438 @@
+package com.terminal;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous front end for a {@link TerminalBuffer}: any number of producer
+ * threads hand in PTY output, and a single writer parses it into the buffer.
+ *
+ * <ul>
+ *   <li>Coalescing - bytes are appended to the newest queued chunk while it has
+ *       room, and the writer takes everything queued in one go, so bursts of small
+ *       reads are parsed as a few large batches.</li>
+ *   <li>Backpressure - at most {@code maxPendingBytes} wait in the queue; beyond
+ *       that {@link #submit} blocks and {@link #offer} returns false. A single chunk
+ *       larger than the limit is still accepted when the queue is empty.</li>
+ *   <li>Frame skipping - after each batch the writer publishes one snapshot for
+ *       readers. When the writer falls behind, batches grow and the states in
+ *       between are never published.</li>
+ * </ul>
+ *
+ * The writer runs on an executor, only while there is work, so many pipelines can
+ * share a small pool (or a virtual-thread executor on newer JDKs). Once a buffer is
+ * behind a pipeline, change it only through {@link #execute} and read it through
+ * {@link #latestSnapshot()}.
+ *
+ * Tasks, the frame listener and the error handler run on the writer, so they must
+ * not call {@link #submit}, {@link #flush} or {@link #close}: those wait for the
+ * writer and would never return. They throw IllegalStateException there instead;
+ * {@link #offer} and {@link #execute} are fine.
+ */
+public final class IngestPipeline implements AutoCloseable {
+    private static final int CHUNK_BYTES = 16 * 1024;
+    private static final int MAX_FREE_CHUNKS = 16;
+
+    private static final class Chunk {
+        final byte[] data;
+        int length;
+
+        Chunk(int capacity) {
+            this.data = new byte[capacity];
+        }
+    }
+
+    private final TerminalBuffer buffer;
+    private final VtParser parser;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;  // null when the caller supplied the executor
+    private final int maxPendingBytes;
+    private final Runnable drainTask = this::drain;
+
+    // guards everything below
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition applied = lock.newCondition();
+    private ArrayDeque<Object> queue = new ArrayDeque<>();  // Chunks and buffer tasks, in order
+    private ArrayDeque<Object> draining = new ArrayDeque<>();
+    private final ArrayDeque<Chunk> freeChunks = new ArrayDeque<>();
+    private long pendingBytes;
+    private long accepted;   // submissions so far
+    private long completed;  // submissions the writer has applied
+    private boolean scheduled;
+    private boolean closed;
+
+    // statistics, written by the writer only
+    private volatile long chunks;
+    private volatile long batches;
+    private volatile TerminalSnapshot latest;
+    private volatile Consumer<TerminalSnapshot> frameListener;
+    private volatile Consumer<Throwable> errorHandler;
+    private volatile Thread writer;  // thread running drain(), null while idle; cleared under the lock
+
+    /**
+     * Creates a pipeline with its own writer thread.
+     */
+    public IngestPipeline(TerminalBuffer buffer, int maxPendingBytes) {
+        this(buffer, null, maxPendingBytes);
+    }
+
+    /**
+     * Creates a pipeline whose writer runs on {@code executor}. At most one writer
+     * task of this pipeline runs at a time.
+     */
+    public IngestPipeline(TerminalBuffer buffer, Executor executor, int maxPendingBytes) {
+        if (maxPendingBytes <= 0) {
+            throw new IllegalArgumentException("maxPendingBytes must be positive: " + maxPendingBytes);
+        }
+        this.buffer = buffer;
+        this.parser = new VtParser(buffer);
+        this.maxPendingBytes = maxPendingBytes;
+        if (executor == null) {
+            this.ownExecutor = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "terminal-ingest");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = ownExecutor;
+        } else {
+            this.ownExecutor = null;
+            this.executor = executor;
+        }
+        this.latest = buffer.snapshot();
+    }
+
+    /**
+     * Queues bytes for parsing, waiting while the queue is full. The bytes are
+     * copied, so the caller may reuse its array straight away.
+     *
+     * @throws IllegalStateException if the pipeline is closed, or if called on the writer
+     */
+    public void submit(byte[] data, int offset, int length) throws InterruptedException {
+        Objects.checkFromIndexSize(offset, length, data.length);
+        ensureNotWriter("submit");
+        boolean schedule;
+        lock.lockInterruptibly();
+        try {
+            ensureOpen();
+            while (pendingBytes > 0 && pendingBytes + length > maxPendingBytes) {
+                notFull.await();
+                ensureOpen();
+            }
+            schedule = enqueue(data, offset, length);
+        } finally {
+            lock.unlock();
+        }
+        if (schedule) {
+            schedule();
+        }
+    }
+
+    /**
+     * Queues bytes for parsing unless the queue is full.
+     *
+     * @return false if the bytes were not accepted because of backpressure
+     * @throws IllegalStateException if the pipeline is closed
+     */
+    public boolean offer(byte[] data, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, data.length);
+        boolean schedule;
+        lock.lock();
+        try {
+            ensureOpen();
+            if (pendingBytes > 0 && pendingBytes + length > maxPendingBytes) {
+                return false;
+            }
+            schedule = enqueue(data, offset, length);
+        } finally {
+            lock.unlock();
+        }
+        if (schedule) {
+            schedule();
+        }
+        return true;
+    }
+
+    /**
+     * Runs a task against the buffer on the writer, in order with the queued bytes -
+     * e.g. a resize, or encoding a frame. The task must not call {@link #submit} or
+     * {@link #flush}.
+     */
+    public void execute(Consumer<TerminalBuffer> task) {
+        Objects.requireNonNull(task);
+        boolean schedule;
+        lock.lock();
+        try {
+            ensureOpen();
+            queue.add(task);
+            accepted++;
+            schedule = scheduleLocked();
+        } finally {
+            lock.unlock();
+        }
+        if (schedule) {
+            schedule();
+        }
+    }
+
+    /**
+     * Waits until everything submitted before this call has been applied.
+     *
+     * @throws IllegalStateException if called on the writer
+     */
+    public void flush() throws InterruptedException {
+        ensureNotWriter("flush");
+        lock.lockInterruptibly();
+        try {
+            long target = accepted;
+            while (completed < target) {
+                applied.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The snapshot published after the most recent batch.
+     */
+    public TerminalSnapshot latestSnapshot() {
+        return latest;
+    }
+
+    /**
+     * Sets a callback run on the writer after each batch with the newly published
+     * snapshot, or null for none. It should hand the snapshot off rather than do
+     * slow work, since it holds up the writer.
+     */
+    public void setFrameListener(Consumer<TerminalSnapshot> listener) {
+        this.frameListener = listener;
+    }
+
+    /**
+     * Sets a callback run on the writer with anything a task, the parser or the
+     * frame listener throws. The writer carries on with the next submission either
+     * way. With no handler (null) the writer thread's uncaught exception handler
+     * gets it, which by default prints it.
+     */
+    public void setErrorHandler(Consumer<Throwable> handler) {
+        this.errorHandler = handler;
+    }
+
+    /**
+     * Number of submissions applied - submit, offer and execute calls. Compare
+     * with {@link #getBatchCount()} to see how much input was coalesced.
+     */
+    public long getChunkCount() {
+        return chunks;
+    }
+
+    /**
+     * Number of batches applied, which is also the number of snapshots published.
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * Stops accepting input, waits for the queued input to be applied and shuts
+     * down the writer thread, if the pipeline created one. If interrupted, it stops
+     * waiting and keeps the interrupt status set.
+     *
+     * @throws IllegalStateException if called on the writer
+     */
+    @Override
+    public void close() {
+        ensureNotWriter("close");
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            // stop waiting, the writer still finishes what was queued
+            Thread.currentThread().interrupt();
+        }
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pipeline is closed");
+        }
+    }
+
+    // Waiting on the writer from the writer itself would deadlock
+    private void ensureNotWriter(String method) {
+        if (Thread.currentThread() == writer) {
+            throw new IllegalStateException(method + "() can't be called on the pipeline's writer");
+        }
+    }
+
+    // Appends to the newest chunk while it has room; returns whether the writer must be scheduled
+    private boolean enqueue(byte[] data, int offset, int length) {
+        Object tail = queue.peekLast();
+        Chunk chunk = tail instanceof Chunk ? (Chunk) tail : null;
+        if (chunk == null || chunk.data.length - chunk.length < length) {
+            chunk = length <= CHUNK_BYTES && !freeChunks.isEmpty() ? freeChunks.poll() : new Chunk(Math.max(CHUNK_BYTES, length));
+            chunk.length = 0;
+            queue.add(chunk);
+        }
+        System.arraycopy(data, offset, chunk.data, chunk.length, length);
+        chunk.length += length;
+        pendingBytes += length;
+        accepted++;
+        return scheduleLocked();
+    }
+
+    private boolean scheduleLocked() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    // Hands the writer to the executor; if that fails, the next submission tries again
+    private void schedule() {
+        try {
+            executor.execute(drainTask);
+        } catch (RuntimeException e) {
+            lock.lock();
+            try {
+                scheduled = false;
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private void drain() {
+        writer = Thread.currentThread();
+        boolean idle = false;
+        try {
+            while (drainBatch()) {
+                // keep going while submissions arrive
+            }
+            idle = true;
+        } finally {
+            if (!idle) {
+                // something got past the error handling - don't leave the pipeline wedged
+                boolean reschedule;
+                lock.lock();
+                try {
+                    writer = null;
+                    scheduled = !queue.isEmpty();
+                    reschedule = scheduled;
+                } finally {
+                    lock.unlock();
+                }
+                if (reschedule) {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    // Applies everything queued as one batch; returns false once the queue is empty
+    private boolean drainBatch() {
+        ArrayDeque<Object> batch;
+        long target;
+        lock.lock();
+        try {
+            if (queue.isEmpty()) {
+                // cleared before another drain can start, possibly on another thread
+                writer = null;
+                scheduled = false;
+                return false;
+            }
+            batch = queue;
+            queue = draining;
+            draining = batch;
+            target = accepted;
+            pendingBytes = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            for (Object item : batch) {
+                try {
+                    if (item instanceof Chunk) {
+                        Chunk chunk = (Chunk) item;
+                        parser.feed(chunk.data, 0, chunk.length);
+                    } else {
+                        @SuppressWarnings("unchecked")
+                        Consumer<TerminalBuffer> task = (Consumer<TerminalBuffer>) item;
+                        task.accept(buffer);
+                    }
+                } catch (RuntimeException e) {
+                    reportError(e);
+                }
+            }
+        } finally {
+            // even if an error got through, don't leave flush() waiting forever
+            publish(batch, target);
+        }
+        return true;
+    }
+
+    private void reportError(RuntimeException e) {
+        Consumer<Throwable> handler = errorHandler;
+        try {
+            if (handler != null) {
+                handler.accept(e);
+            } else {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        } catch (RuntimeException ignored) {
+            // a failing handler must not stop the writer
+        }
+    }
+
+    private void publish(ArrayDeque<Object> batch, long target) {
+        TerminalSnapshot snapshot = buffer.snapshot();
+        latest = snapshot;
+        batches++;
+        try {
+            // before completing the batch, so flush() also waits for the listener
+            Consumer<TerminalSnapshot> listener = frameListener;
+            if (listener != null) {
+                listener.accept(snapshot);
+            }
+        } catch (RuntimeException e) {
+            reportError(e);
+        } finally {
+            lock.lock();
+            try {
+                chunks += target - completed;
+                completed = target;
+                for (Object item : batch) {
+                    if (item instanceof Chunk && ((Chunk) item).data.length == CHUNK_BYTES
+                            && freeChunks.size() < MAX_FREE_CHUNKS) {
+                        freeChunks.add((Chunk) item);
+                    }
+                }
+                batch.clear();
+                applied.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.terminal;
+
+/**
+ * Latency distribution of one buffer operation, in power-of-two nanosecond buckets.
+ *
+ * Recording is a few arithmetic operations and never allocates. Percentiles are
+ * reported as the upper bound of the bucket they fall in, so they are accurate to
+ * within a factor of two - plenty to tell microseconds from milliseconds.
+ *
+ * Updated by the thread writing to the buffer without synchronization; other
+ * threads may read slightly stale values.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    // bucket i holds durations in [2^(i-1), 2^i) ns, bucket 0 holds 0
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    LatencyHistogram() {
+    }
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[64 - Long.numberOfLeadingZeros(value)]++;
+        count++;
+        totalNanos += value;
+        if (value > maxNanos) {
+            maxNanos = value;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile (0-100), e.g. 99 for p99.
+     * 0 when nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.max(0, Math.min(100, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) {
+                return i == 0 ? 0 : Math.min(maxNanos, (1L << i) - 1);
+            }
+        }
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + count + ", mean=" + getMeanNanos() + "ns, p99="
+                + getPercentileNanos(99) + "ns, max=" + maxNanos + "ns}";
+    }
+}
@@ -1,68 +1,209 @@
 package com.terminal;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Represents a single row of cells in the terminal.
+ * Cells are stored in parallel primitive arrays (characters and
+ * attribute palette ids) so a row costs a couple of arrays instead of one object per cell.
  */
-class Line {
-    private List<Cell> cells;
+class Line implements LineView {
+    private char[] chars;
+    private int[] attrs;  // AttributePalette ids, 0 = default attributes
+    private boolean shared;  // referenced by a snapshot - must be copied before writing
+    private boolean wrapped;  // text continues on the next line (soft wrap)
 
     public Line(int width) {
-        this.cells = new ArrayList<>(width);
-        for (int i = 0; i < width; i++) {
-            cells.add(new Cell());
-        }
+        this.chars = new char[width];
+        this.attrs = new int[width];
+        Arrays.fill(chars, ' ');
+    }
+
+    private Line(char[] chars, int[] attrs) {
+        this.chars = chars;
+        this.attrs = attrs;
     }
 
+    /**
+     * Returns an unshared copy of this line.
+     */
+    public Line copy() {
+        Line copy = new Line(chars.clone(), attrs.clone());
+        copy.wrapped = wrapped;
+        return copy;
+    }
+
+    /**
+     * Marks the line as visible to a snapshot. From then on the writer must copy
+     * it instead of modifying it, and it must not be recycled.
+     */
+    public void share() {
+        shared = true;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    @Override
+    public boolean isWrapped() {
+        return wrapped;
+    }
+
+    /**
+     * Marks the line as soft-wrapped: the cursor ran past its end and the text
+     * continues on the next line. Reflow on resize joins such lines back up.
+     */
+    public void setWrapped(boolean wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    /**
+     * Returns a copy of the cell at the given column.
+     * Kept for compatibility - hot paths should use getChar/getAttr instead.
+     */
     public Cell getCell(int col) {
-        if (col < 0 || col >= cells.size()) {
+        if (col < 0 || col >= chars.length) {
             return new Cell();  // return empty cell for out-of-bounds
         }
-        return cells.get(col);
+        return new Cell(chars[col], attrs[col]);
     }
 
     public void setCell(int col, Cell cell) {
-        if (col >= 0 && col < cells.size()) {
-            cells.set(col, cell.copy());
+        if (col >= 0 && col < chars.length) {
+            chars[col] = cell.getCharacter();
+            attrs[col] = cell.getAttributeId();
         }
     }
 
-    public int getWidth() {
-        return cells.size();
+    @Override
+    public char getChar(int col) {
+        return chars[col];
+    }
+
+    @Override
+    public int getAttr(int col) {
+        return attrs[col];
+    }
+
+    public void set(int col, char ch, int attr) {
+        chars[col] = ch;
+        attrs[col] = attr;
     }
 
     /**
-     * Converts the line to a string by concatenating all cell characters.
+     * Blanks every cell and sets the line to the given width, reusing the arrays when possible.
      */
-    public String asString() {
-        StringBuilder sb = new StringBuilder();
-        for (Cell cell : cells) {
-            sb.append(cell.getCharacter());
+    public void reset(int width) {
+        if (width != chars.length) {
+            chars = new char[width];
+            attrs = new int[width];
         }
-        return sb.toString();
+        Arrays.fill(chars, ' ');
+        Arrays.fill(attrs, AttributePalette.DEFAULT_ID);
+        wrapped = false;
+    }
+
+    /**
+     * Copies src[from, to) into the line starting at col, all with the same attribute.
+     * The caller guarantees the run fits within the line.
+     */
+    public void setRun(int col, char[] src, int from, int to, int attr) {
+        System.arraycopy(src, from, chars, col, to - from);
+        Arrays.fill(attrs, col, col + (to - from), attr);
     }
 
-    public void fill(char ch, CellAttributes attrs) {
-        for (int i = 0; i < cells.size(); i++) {
-            cells.set(i, new Cell(ch, attrs));
+    /**
+     * Copies src[from, to) into the line starting at col, all with the same attribute.
+     * The caller guarantees the run fits within the line.
+     */
+    public void setRun(int col, CharSequence src, int from, int to, int attr) {
+        if (src instanceof String) {
+            ((String) src).getChars(from, to, chars, col);
+        } else {
+            for (int i = from; i < to; i++) {
+                chars[col + i - from] = src.charAt(i);
+            }
         }
+        Arrays.fill(attrs, col, col + (to - from), attr);
+    }
+
+    /**
+     * Moves count cells from srcCol to dstCol within the line. The ranges may overlap.
+     */
+    public void moveCells(int srcCol, int dstCol, int count) {
+        System.arraycopy(chars, srcCol, chars, dstCol, count);
+        System.arraycopy(attrs, srcCol, attrs, dstCol, count);
     }
 
     /**
-     * Resizes the line by adding or removing cells.
-     * When shrinking, cells are truncated from the end.
+     * Copies count cells of src starting at srcCol into this line at col.
      */
-    public void resize(int newWidth) {
-        if (newWidth > cells.size()) {
-            // expand - add empty cells
-            while (cells.size() < newWidth) {
-                cells.add(new Cell());
+    public void copyFrom(LineView src, int srcCol, int col, int count) {
+        if (src instanceof Line) {
+            Line line = (Line) src;
+            System.arraycopy(line.chars, srcCol, chars, col, count);
+            System.arraycopy(line.attrs, srcCol, attrs, col, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                chars[col + i] = src.getChar(srcCol + i);
+                attrs[col + i] = src.getAttr(srcCol + i);
             }
-        } else if (newWidth < cells.size()) {
-            // shrink - truncate
-            cells = new ArrayList<>(cells.subList(0, newWidth));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Blanks the cells in [from, to) and resets their attributes to the default.
+     * Clearing up to the end of the line also ends a soft wrap.
+     */
+    public void clear(int from, int to) {
+        Arrays.fill(chars, from, to, ' ');
+        Arrays.fill(attrs, from, to, AttributePalette.DEFAULT_ID);
+        if (to >= chars.length) {
+            wrapped = false;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return chars.length;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return estimatedBytes(chars.length);
+    }
+
+    @Override
+    public void copyInto(char[] dstChars, int[] dstAttrs, int width) {
+        int stored = Math.min(width, chars.length);
+        System.arraycopy(chars, 0, dstChars, 0, stored);
+        System.arraycopy(attrs, 0, dstAttrs, 0, stored);
+        Arrays.fill(dstChars, stored, width, ' ');
+        Arrays.fill(dstAttrs, stored, width, AttributePalette.DEFAULT_ID);
+    }
+
+    /**
+     * Estimated heap size of a line of the given width: object header and fields,
+     * plus the char[] and int[] arrays.
+     */
+    static long estimatedBytes(int width) {
+        return 24 + align(16 + 2L * width) + align(16 + 4L * width);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Converts the line to a string by concatenating all cell characters.
+     */
+    public String asString() {
+        return new String(chars);
+    }
+
+    public void fill(char ch, int attr) {
+        Arrays.fill(chars, ch);
+        Arrays.fill(attrs, attr);
+    }
+}
@@ -0,0 +1,58 @@
+package com.terminal;
+
+/**
+ * Per-buffer pool of recycled lines.
+ *
+ * Lines evicted from scrollback are returned here and handed back out, reset,
+ * for new bottom rows. Once history is full every scroll evicts one line and
+ * needs one line, so steady-state scrolling allocates nothing.
+ */
+class LinePool {
+    private final Line[] free;
+    private int count;
+
+    private long hits;
+    private long misses;
+
+    LinePool(int capacity) {
+        this.free = new Line[Math.max(1, capacity)];
+    }
+
+    /**
+     * Returns a blank line of the given width, reusing a pooled line when one is available.
+     */
+    Line acquire(int width) {
+        if (count == 0) {
+            misses++;
+            return new Line(width);
+        }
+        hits++;
+        Line line = free[--count];
+        free[count] = null;
+        line.reset(width);
+        return line;
+    }
+
+    /**
+     * Hands a line back to the pool. The line must no longer be referenced by the buffer.
+     * Lines a snapshot may still see, and lines beyond the pool capacity, are left to
+     * the garbage collector.
+     */
+    void release(Line line) {
+        if (line != null && !line.isShared() && count < free.length) {
+            free[count++] = line;
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,75 @@
+package com.terminal;
+
+/**
+ * Read-only access to a stored row - either a mutable {@link Line} or an
+ * encoded {@link CompactLine} in scrollback.
+ */
+interface LineView {
+
+    /**
+     * Width the line had when it was stored.
+     */
+    int getWidth();
+
+    /**
+     * Character at a column in [0, getWidth()).
+     */
+    char getChar(int col);
+
+    /**
+     * {@link AttributePalette} id at a column in [0, getWidth()).
+     */
+    int getAttr(int col);
+
+    /**
+     * True if the text continues on the next line (soft wrap).
+     */
+    boolean isWrapped();
+
+    /**
+     * Number of cells up to and including the last one that isn't a default blank.
+     */
+    default int contentLength() {
+        int length = getWidth();
+        while (length > 0 && getChar(length - 1) == ' '
+                && getAttr(length - 1) == AttributePalette.DEFAULT_ID) {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * Rough number of heap bytes the line retains, used for memory accounting.
+     */
+    long estimatedBytes();
+
+    /**
+     * Passes the first {@code width} cells to the visitor as row {@code row}, padding
+     * with default blanks past the stored width.
+     */
+    default void forEachCell(int row, int width, CellVisitor visitor) {
+        int stored = Math.min(width, getWidth());
+        for (int col = 0; col < stored; col++) {
+            visitor.visit(row, col, getChar(col), getAttr(col));
+        }
+        for (int col = stored; col < width; col++) {
+            visitor.visit(row, col, ' ', AttributePalette.DEFAULT_ID);
+        }
+    }
+
+    /**
+     * Copies the first {@code width} cells into the given arrays, padding with default
+     * blanks past the stored width.
+     */
+    default void copyInto(char[] chars, int[] attrs, int width) {
+        int stored = Math.min(width, getWidth());
+        for (int i = 0; i < stored; i++) {
+            chars[i] = getChar(i);
+            attrs[i] = getAttr(i);
+        }
+        for (int i = stored; i < width; i++) {
+            chars[i] = ' ';
+            attrs[i] = AttributePalette.DEFAULT_ID;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.terminal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only line backed by a record in a mapped file, decoded on each access.
+ *
+ * The record uses the {@link DiskScrollback} layout:
+ * {@code [int width][int length][char x length][int attribute id x length]}, trailing
+ * blank cells not stored and the top bit of the length marking a soft wrap. Only
+ * this small object lives on the heap; the cells stay in the mapping. Attribute ids
+ * outside the palette, which only a damaged file can hold, read back as the default.
+ */
+final class MappedLine implements LineView {
+    private final ByteBuffer map;
+    private final int pos;
+
+    MappedLine(ByteBuffer map, int pos) {
+        this.map = map;
+        this.pos = pos;
+    }
+
+    static long recordBytes(int length) {
+        return 2 * Integer.BYTES + (long) length * (Character.BYTES + Integer.BYTES);
+    }
+
+    @Override
+    public int getWidth() {
+        return map.getInt(pos);
+    }
+
+    @Override
+    public boolean isWrapped() {
+        return (map.getInt(pos + 4) & DiskScrollback.WRAPPED) != 0;
+    }
+
+    @Override
+    public int contentLength() {
+        return map.getInt(pos + 4) & ~DiskScrollback.WRAPPED;
+    }
+
+    @Override
+    public char getChar(int col) {
+        return col < contentLength() ? map.getChar(pos + 8 + col * Character.BYTES) : ' ';
+    }
+
+    @Override
+    public int getAttr(int col) {
+        int length = contentLength();
+        if (col >= length) {
+            return AttributePalette.DEFAULT_ID;
+        }
+        return checked(map.getInt(pos + 8 + length * Character.BYTES + col * Integer.BYTES));
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // object header and fields; the cells are off-heap
+        return 24;
+    }
+
+    @Override
+    public void copyInto(char[] chars, int[] attrs, int width) {
+        int stored = contentLength();
+        int length = Math.min(width, stored);
+        int attrPos = pos + 8 + stored * Character.BYTES;
+        for (int i = 0; i < length; i++) {
+            chars[i] = map.getChar(pos + 8 + i * Character.BYTES);
+            attrs[i] = checked(map.getInt(attrPos + i * Integer.BYTES));
+        }
+        for (int i = length; i < width; i++) {
+            chars[i] = ' ';
+            attrs[i] = AttributePalette.DEFAULT_ID;
+        }
+    }
+
+    /**
+     * Whether every stored attribute id is in the palette.
+     */
+    boolean hasValidAttributes() {
+        int length = contentLength();
+        int attrPos = pos + 8 + length * Character.BYTES;
+        for (int i = 0; i < length; i++) {
+            int id = map.getInt(attrPos + i * Integer.BYTES);
+            if (id < 0 || id >= AttributePalette.SIZE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int checked(int id) {
+        return id >= 0 && id < AttributePalette.SIZE ? id : AttributePalette.DEFAULT_ID;
+    }
+}
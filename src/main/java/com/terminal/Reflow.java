@@ -0,0 +1,200 @@
+package com.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Re-wraps rows to a new width.
+ *
+ * Rows flagged as soft-wrapped are joined with the rows that follow into logical
+ * lines, and each logical line is wrapped again at the new width. Trailing blanks
+ * at the end of a logical line are dropped, a wide character is never split across
+ * rows (it moves to the next row, leaving a blank that is dropped again on the next
+ * reflow), and the blank cell after a wide character travels with it. Rows ended
+ * by an explicit line feed stay separate.
+ *
+ * One row position (the cursor) can be tracked through the re-wrap.
+ */
+final class Reflow {
+    // below this many rows a single thread is fast enough
+    static final int PARALLEL_THRESHOLD = 16384;
+    private static final int CHUNK_ROWS = 4096;
+
+    private final int width;
+    private final List<Line> out = new ArrayList<>();
+    private Line current;
+    private int col;
+
+    private int cursorRow = -1;  // input row index, -1 when not tracking
+    private int cursorCol;
+    private int newCursorRow;
+    private int newCursorCol;
+
+    Reflow(int width) {
+        this.width = width;
+    }
+
+    /**
+     * Tracks the cell at (row index in the input, column) through the next rewrap.
+     * The column may be past the row's content or even its width.
+     */
+    void trackCursor(int row, int col) {
+        this.cursorRow = row;
+        this.cursorCol = col;
+    }
+
+    int getCursorRow() {
+        return newCursorRow;
+    }
+
+    int getCursorCol() {
+        return newCursorCol;
+    }
+
+    /**
+     * Re-wraps rows[from, to). A soft wrap on the last row is kept, so the result
+     * still continues into whatever followed the range.
+     */
+    List<Line> rewrap(List<? extends LineView> rows, int from, int to) {
+        int first = from;
+        while (first < to) {
+            int last = first;
+            while (last < to - 1 && rows.get(last).isWrapped()) {
+                last++;
+            }
+            appendLogicalLine(rows, first, last);
+            first = last + 1;
+        }
+        return out;
+    }
+
+    /**
+     * Re-wraps all rows, keeping at most the newest maxRows of the result.
+     *
+     * Large inputs are cut into chunks at logical line boundaries. Chunks are
+     * re-wrapped in parallel batches starting from the newest, and older chunks
+     * are skipped once enough rows have been produced - narrowing a full history
+     * doesn't re-wrap lines that would be dropped straight away.
+     */
+    static List<Line> rewrapAll(List<? extends LineView> rows, int width, int maxRows) {
+        int size = rows.size();
+        List<Line> rewrapped;
+        if (size < PARALLEL_THRESHOLD) {
+            rewrapped = new Reflow(width).rewrap(rows, 0, size);
+        } else {
+            List<Integer> bounds = new ArrayList<>();
+            bounds.add(0);
+            int end = 0;
+            while (end < size) {
+                end = Math.min(size, end + CHUNK_ROWS);
+                while (end < size && rows.get(end - 1).isWrapped()) {
+                    end++;
+                }
+                bounds.add(end);
+            }
+
+            int batch = Math.max(1, Runtime.getRuntime().availableProcessors());
+            List<List<Line>> chunks = new ArrayList<>();  // newest first
+            int produced = 0;
+            int next = bounds.size() - 1;
+            while (next > 0 && produced < maxRows) {
+                int from = Math.max(0, next - batch);
+                int to = next;
+                List<List<Line>> done = IntStream.range(from, to)
+                        .parallel()
+                        .mapToObj(i -> new Reflow(width).rewrap(rows, bounds.get(i), bounds.get(i + 1)))
+                        .collect(Collectors.toList());
+                for (int i = done.size() - 1; i >= 0; i--) {
+                    chunks.add(done.get(i));
+                    produced += done.get(i).size();
+                }
+                next = from;
+            }
+
+            rewrapped = new ArrayList<>(produced);
+            for (int i = chunks.size() - 1; i >= 0; i--) {
+                rewrapped.addAll(chunks.get(i));
+            }
+        }
+        if (rewrapped.size() > maxRows) {
+            rewrapped = rewrapped.subList(rewrapped.size() - maxRows, rewrapped.size());
+        }
+        return rewrapped;
+    }
+
+    private void appendLogicalLine(List<? extends LineView> rows, int first, int last) {
+        startRow();
+        for (int r = first; r <= last; r++) {
+            LineView row = rows.get(r);
+            int rowWidth = row.getWidth();
+            boolean cursorHere = r == cursorRow;
+            // only the last row's trailing blanks are padding; earlier rows wrapped at full
+            // width, except for the blank left when a wide character moved to the next row
+            int end = r < last ? rowWidth : row.contentLength();
+            if (r < last && end > 0 && row.getChar(end - 1) == ' '
+                    && row.getAttr(end - 1) == AttributePalette.DEFAULT_ID
+                    && rows.get(r + 1).getWidth() > 0 && Cell.isWideCharacter(rows.get(r + 1).getChar(0))) {
+                end--;
+            }
+            if (cursorHere) {
+                end = Math.max(end, cursorCol);
+            }
+
+            for (int c = 0; c < end; c++) {
+                char ch = c < rowWidth ? row.getChar(c) : ' ';
+                boolean wide = Cell.isWideCharacter(ch) && width >= 2;
+                int cells = wide ? 2 : 1;
+                if (col + cells > width) {
+                    current.setWrapped(true);
+                    startRow();
+                }
+                if (!wide && c < rowWidth) {
+                    // copy the run of narrow characters that fits on this row in one go
+                    int limit = Math.min(Math.min(end, rowWidth), c + (width - col));
+                    int runEnd = c + 1;
+                    while (runEnd < limit && !Cell.isWideCharacter(row.getChar(runEnd))) {
+                        runEnd++;
+                    }
+                    if (cursorHere && cursorCol >= c && cursorCol < runEnd) {
+                        markCursor(col + cursorCol - c);
+                    }
+                    current.copyFrom(row, c, col, runEnd - c);
+                    col += runEnd - c;
+                    c = runEnd - 1;
+                    continue;
+                }
+                if (cursorHere && c == cursorCol) {
+                    markCursor(col);
+                }
+                current.set(col, ch, c < rowWidth ? row.getAttr(c) : AttributePalette.DEFAULT_ID);
+                if (wide) {
+                    current.set(col + 1, ' ', row.getAttr(c));
+                    if (c + 1 < end && c + 1 < rowWidth && row.getChar(c + 1) == ' ') {
+                        c++;  // the old blank after the wide character
+                        if (cursorHere && c == cursorCol) {
+                            markCursor(col + 1);
+                        }
+                    }
+                }
+                col += cells;
+            }
+            if (cursorHere && cursorCol >= end) {
+                markCursor(col);
+            }
+        }
+        current.setWrapped(rows.get(last).isWrapped());
+    }
+
+    private void startRow() {
+        current = new Line(width);
+        out.add(current);
+        col = 0;
+    }
+
+    private void markCursor(int column) {
+        newCursorRow = out.size() - 1;
+        newCursorCol = column;
+    }
+}
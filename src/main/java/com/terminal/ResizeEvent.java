@@ -0,0 +1,31 @@
+package com.terminal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for {@link TerminalBuffer#resize}. Costs next to nothing unless a
+ * recording enables it.
+ */
+@Name("com.terminal.Resize")
+@Label("Terminal Resize")
+@Category("Terminal")
+@Description("Resize of a terminal buffer, including re-wrapping its history")
+final class ResizeEvent extends jdk.jfr.Event {
+    @Label("Old Width")
+    int oldWidth;
+
+    @Label("Old Height")
+    int oldHeight;
+
+    @Label("New Width")
+    int newWidth;
+
+    @Label("New Height")
+    int newHeight;
+
+    @Label("Scrollback Lines")
+    int scrollbackLines;
+}
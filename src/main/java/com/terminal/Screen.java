@@ -0,0 +1,138 @@
+package com.terminal;
+
+import java.util.List;
+
+/**
+ * The visible rows of the terminal, kept as a ring with a top-offset index.
+ *
+ * Scrolling the whole screen moves the top index instead of shifting every row
+ * reference, so a scroll is O(1) regardless of the screen height.
+ */
+class Screen {
+    private Line[] rows;
+    private int top;  // slot holding screen row 0
+
+    Screen(int width, int height) {
+        this.rows = new Line[height];
+        for (int i = 0; i < height; i++) {
+            rows[i] = new Line(width);
+        }
+    }
+
+    int getHeight() {
+        return rows.length;
+    }
+
+    Line get(int row) {
+        return rows[slot(row)];
+    }
+
+    /**
+     * Returns a row the caller may modify. A row shared with a snapshot is
+     * replaced by a private copy first (copy-on-write).
+     */
+    Line editable(int row) {
+        int slot = slot(row);
+        Line line = rows[slot];
+        if (line.isShared()) {
+            line = line.copy();
+            rows[slot] = line;
+        }
+        return line;
+    }
+
+    /**
+     * Copies the current row references in screen order and marks the rows shared.
+     */
+    Line[] share() {
+        Line[] shared = new Line[rows.length];
+        for (int row = 0; row < rows.length; row++) {
+            Line line = get(row);
+            line.share();
+            shared[row] = line;
+        }
+        return shared;
+    }
+
+    void set(int row, Line line) {
+        rows[slot(row)] = line;
+    }
+
+    /**
+     * Scrolls the screen up by one row.
+     * The replacement line becomes the new bottom row.
+     *
+     * @return the line that was on top, which is no longer part of the screen
+     */
+    Line scrollUp(Line replacement) {
+        Line topLine = rows[top];
+        rows[top] = replacement;
+        top = slot(1);
+        return topLine;
+    }
+
+    /**
+     * Scrolls the whole screen down by one row - the inverse of {@link #scrollUp}.
+     * The replacement line becomes the new top row.
+     *
+     * @return the line that was at the bottom, which is no longer part of the screen
+     */
+    Line scrollDown(Line replacement) {
+        top = slot(rows.length - 1);
+        Line bottomLine = rows[top];
+        rows[top] = replacement;
+        return bottomLine;
+    }
+
+    /**
+     * Scrolls rows [first, last] up by n (1 <= n <= last - first + 1): the first n
+     * rows of the range go back to the pool and n blank rows open at the bottom of
+     * the range. Only row references move, cells are not copied.
+     */
+    void scrollRegionUp(int first, int last, int n, int width, LinePool pool) {
+        for (int row = first; row < first + n; row++) {
+            pool.release(get(row));
+        }
+        for (int row = first; row <= last - n; row++) {
+            set(row, get(row + n));
+        }
+        for (int row = last - n + 1; row <= last; row++) {
+            set(row, pool.acquire(width));
+        }
+    }
+
+    /**
+     * Scrolls rows [first, last] down by n (1 <= n <= last - first + 1): the last n
+     * rows of the range go back to the pool and n blank rows open at the top of the
+     * range. Only row references move, cells are not copied.
+     */
+    void scrollRegionDown(int first, int last, int n, int width, LinePool pool) {
+        for (int row = last - n + 1; row <= last; row++) {
+            pool.release(get(row));
+        }
+        for (int row = last; row >= first + n; row--) {
+            set(row, get(row - n));
+        }
+        for (int row = first; row < first + n; row++) {
+            set(row, pool.acquire(width));
+        }
+    }
+
+    /**
+     * Rebuilds the ring with a new height: the given rows go at the top and any
+     * rows missing at the bottom are filled with blank lines of the given width.
+     */
+    void replace(List<Line> content, int newHeight, int width, LinePool pool) {
+        Line[] replaced = new Line[newHeight];
+        for (int i = 0; i < newHeight; i++) {
+            replaced[i] = i < content.size() ? content.get(i) : pool.acquire(width);
+        }
+        rows = replaced;
+        top = 0;
+    }
+
+    private int slot(int row) {
+        int slot = top + row;
+        return slot < rows.length ? slot : slot - rows.length;
+    }
+}
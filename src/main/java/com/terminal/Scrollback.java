@@ -0,0 +1,169 @@
+package com.terminal;
+
+import java.util.Arrays;
+
+/**
+ * Scrollback history stored as a circular array of lines.
+ * Entries are either plain {@link Line}s or encoded {@link CompactLine}s.
+ *
+ * Index 0 is the oldest line. Random access, append and eviction of the oldest
+ * line are all O(1). The backing array grows on demand until it reaches the
+ * configured capacity and from then on wraps around, overwriting the oldest slot.
+ *
+ * {@link #snapshot()} hands out a read-only view that shares the backing array.
+ * The array is copied the first time the writer needs to overwrite a slot after
+ * that, and lines that were stored at snapshot time report {@link #isShared(int)}.
+ */
+class Scrollback {
+    private static final int INITIAL_SLOTS = 64;
+
+    private final int capacity;
+    private LineView[] lines;
+    private int head;  // slot of the oldest line
+    private int size;
+
+    private long firstSeq;      // sequence number of the oldest line, counts every line ever evicted
+    private long sharedBefore;  // lines with a lower sequence number may be visible to a snapshot
+    private boolean arrayShared;
+
+    Scrollback(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.lines = new LineView[Math.min(this.capacity, INITIAL_SLOTS)];
+    }
+
+    // read-only view used by snapshots
+    private Scrollback(LineView[] lines, int head, int size) {
+        this.capacity = size;
+        this.lines = lines;
+        this.head = head;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the line at the given index, 0 being the oldest line.
+     */
+    LineView get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Scrollback index " + index + ", size " + size);
+        }
+        return lines[slot(index)];
+    }
+
+    /**
+     * Replaces the line at the given index, e.g. with a resized copy.
+     */
+    void set(int index, LineView line) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Scrollback index " + index + ", size " + size);
+        }
+        unshareArray();
+        lines[slot(index)] = line;
+    }
+
+    /**
+     * True if a snapshot may still see the line at this index, so it must not be modified.
+     */
+    boolean isShared(int index) {
+        LineView line = get(index);
+        return firstSeq + index < sharedBefore || (line instanceof Line && ((Line) line).isShared());
+    }
+
+    /**
+     * Appends a line as the newest entry.
+     * Check {@link #isShared(int)} on index 0 before adding to a full ring to find out
+     * whether the evicted line may be reused.
+     *
+     * @return the line evicted to make room, or null if nothing was evicted
+     */
+    LineView add(LineView line) {
+        if (capacity == 0) {
+            return line;
+        }
+        if (size < capacity) {
+            if (size == lines.length) {
+                grow();
+            }
+            // an empty slot is outside every snapshot's range, no need to copy
+            lines[slot(size)] = line;
+            size++;
+            return null;
+        }
+        // full - the new line takes the slot of the oldest one
+        unshareArray();
+        LineView evicted = lines[head];
+        lines[head] = line;
+        head = (head + 1) % lines.length;
+        firstSeq++;
+        return evicted;
+    }
+
+    /**
+     * Removes the oldest line.
+     *
+     * @return the removed line
+     */
+    LineView removeOldest() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Scrollback is empty");
+        }
+        unshareArray();
+        LineView oldest = lines[head];
+        lines[head] = null;
+        head = (head + 1) % lines.length;
+        size--;
+        firstSeq++;
+        return oldest;
+    }
+
+    void clear() {
+        if (arrayShared) {
+            lines = new LineView[Math.min(capacity, INITIAL_SLOTS)];
+            arrayShared = false;
+        } else {
+            Arrays.fill(lines, null);
+        }
+        head = 0;
+        firstSeq += size;
+        size = 0;
+    }
+
+    /**
+     * Returns a read-only view of the current history without copying it.
+     */
+    Scrollback snapshot() {
+        arrayShared = true;
+        sharedBefore = firstSeq + size;
+        return new Scrollback(lines, head, size);
+    }
+
+    private void unshareArray() {
+        if (arrayShared) {
+            lines = lines.clone();
+            arrayShared = false;
+        }
+    }
+
+    private int slot(int index) {
+        int slot = head + index;
+        return slot < lines.length ? slot : slot - lines.length;
+    }
+
+    private void grow() {
+        int newLength = (int) Math.min(capacity, Math.max(INITIAL_SLOTS, (long) lines.length * 2));
+        LineView[] grown = new LineView[newLength];
+        for (int i = 0; i < size; i++) {
+            grown[i] = lines[slot(i)];
+        }
+        lines = grown;
+        head = 0;
+        arrayShared = false;
+    }
+}
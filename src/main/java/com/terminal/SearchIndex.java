@@ -0,0 +1,303 @@
+package com.terminal;
+
+import java.util.Arrays;
+
+/**
+ * Trigram index over scrollback lines, used to find candidate lines for a search
+ * without reading every line.
+ *
+ * Lines are identified by their history sequence number (see {@link History}).
+ * Every trigram of a line's lower-cased text maps to an ascending list of the lines
+ * containing it. Lines only ever enter at the newest end and leave at the oldest,
+ * so eviction just moves the start of each list forward. That happens lazily when
+ * a list is read, plus a full sweep once as many lines have been evicted as are
+ * still indexed, which keeps memory proportional to the live history.
+ *
+ * Candidates can be false positives (e.g. a line was truncated by a resize) but
+ * never false negatives, so callers verify each candidate against the line text.
+ */
+final class SearchIndex {
+    static final int GRAM = 3;
+
+    /**
+     * Ascending sequence numbers of the lines containing one trigram, stored
+     * relative to the index base.
+     */
+    static final class Postings {
+        private int[] seqs = new int[4];
+        private int start;
+        private int end;
+
+        private void add(int seq) {
+            if (end > start && seqs[end - 1] == seq) {
+                return;  // trigram occurs more than once in the line
+            }
+            if (end == seqs.length) {
+                if (start > seqs.length / 2) {
+                    System.arraycopy(seqs, start, seqs, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else {
+                    seqs = Arrays.copyOf(seqs, seqs.length * 2);
+                }
+            }
+            seqs[end++] = seq;
+        }
+
+        private void dropBefore(int seq) {
+            while (start < end && seqs[start] < seq) {
+                start++;
+            }
+        }
+
+        int size() {
+            return end - start;
+        }
+    }
+
+    /**
+     * Open-addressing map from trigram key to postings. Keys stay primitive, so
+     * indexing a line allocates nothing for trigrams that are already known.
+     */
+    private static final class PostingsTable {
+        private long[] keys = new long[64];
+        private Postings[] values = new Postings[64];  // null marks a free slot
+        private int size;
+
+        Postings get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        Postings getOrCreate(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            for (; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            Postings list = new Postings();
+            keys[slot] = key;
+            values[slot] = list;
+            if (++size > keys.length / 2) {
+                rehash(keys.length * 2, false);
+            }
+            return list;
+        }
+
+        // Drops empty lists and rebuilds the table at a size fitting what is left
+        void removeEmpty() {
+            int live = 0;
+            for (Postings list : values) {
+                if (list != null && list.size() > 0) {
+                    live++;
+                }
+            }
+            size = live;
+            rehash(Math.max(64, Integer.highestOneBit(Math.max(1, live)) * 4), true);
+        }
+
+        void clear() {
+            keys = new long[64];
+            values = new Postings[64];
+            size = 0;
+        }
+
+        private void rehash(int capacity, boolean dropEmpty) {
+            long[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new long[capacity];
+            values = new Postings[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null && (!dropEmpty || oldValues[i].size() > 0)) {
+                    int slot = slot(oldKeys[i], mask);
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+
+    private static final Postings NONE = new Postings();
+
+    private final PostingsTable postings = new PostingsTable();
+    private long base;      // stored sequence numbers are relative to this
+    private long firstSeq;  // lines below this have been evicted
+    private long nextSeq;
+    private long evictedSinceSweep;
+
+    // scratch space for add()
+    private char[] cells = new char[0];
+    private char[] text = new char[0];
+
+    SearchIndex(long firstSeq) {
+        this.base = firstSeq;
+        this.firstSeq = firstSeq;
+        this.nextSeq = firstSeq;
+    }
+
+    /**
+     * True when seq no longer fits the relative encoding and the index must be
+     * rebuilt with a new base. Takes about 2 billion lines.
+     */
+    boolean needsRebase(long seq) {
+        return seq - base > Integer.MAX_VALUE;
+    }
+
+    /**
+     * Indexes a line as history entry {@code seq}. Lines must be added in order.
+     */
+    void add(long seq, LineView line) {
+        int width = line.getWidth();
+        if (cells.length < width) {
+            cells = new char[width];
+            text = new char[width];
+        }
+        for (int i = 0; i < width; i++) {
+            cells[i] = line.getChar(i);
+        }
+        int length = searchableText(cells, width, text, null);
+        int relative = (int) (seq - base);
+        for (int i = 0; i + GRAM <= length; i++) {
+            long key = key(text, i);
+            postings.getOrCreate(key).add(relative);
+        }
+        nextSeq = seq + 1;
+    }
+
+    /**
+     * Forgets all lines with a sequence number below {@code seq}.
+     */
+    void evictBefore(long seq) {
+        if (seq <= firstSeq) {
+            return;
+        }
+        evictedSinceSweep += seq - firstSeq;
+        firstSeq = seq;
+        if (evictedSinceSweep > nextSeq - firstSeq) {
+            sweep();
+        }
+    }
+
+    void clear(long nextSeq) {
+        postings.clear();
+        this.base = nextSeq;
+        this.firstSeq = nextSeq;
+        this.nextSeq = nextSeq;
+        evictedSinceSweep = 0;
+    }
+
+    /**
+     * Returns the postings of the rarest trigram of a lower-cased query - every
+     * line containing the query is in it. Null when the query is too short to
+     * use the index.
+     */
+    Postings candidates(char[] query, int length) {
+        if (length < GRAM) {
+            return null;
+        }
+        Postings best = null;
+        for (int i = 0; i + GRAM <= length; i++) {
+            Postings list = postings.get(key(query, i));
+            if (list == null) {
+                return NONE;
+            }
+            list.dropBefore((int) (firstSeq - base));
+            if (best == null || list.size() < best.size()) {
+                best = list;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sequence number of the i-th entry of a list returned by {@link #candidates}.
+     */
+    long seqAt(Postings list, int i) {
+        return base + list.seqs[list.start + i];
+    }
+
+    /**
+     * Index in the list of the first entry with a sequence number >= seq.
+     */
+    int lowerBound(Postings list, long seq) {
+        long relative = seq - base;
+        int low = list.start;
+        int high = list.end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list.seqs[mid] < relative) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - list.start;
+    }
+
+    int trigramCount() {
+        return postings.size;
+    }
+
+    private void sweep() {
+        int first = (int) (firstSeq - base);
+        for (Postings list : postings.values) {
+            if (list == null) {
+                continue;
+            }
+            list.dropBefore(first);
+            if (list.start > 0 && list.size() > 0 && list.size() < list.seqs.length / 4) {
+                list.seqs = Arrays.copyOfRange(list.seqs, list.start, list.start + Math.max(4, list.size() * 2));
+                list.end -= list.start;
+                list.start = 0;
+            }
+        }
+        postings.removeEmpty();
+        evictedSinceSweep = 0;
+    }
+
+    private static long key(char[] text, int i) {
+        return ((long) text[i] << 32) | ((long) text[i + 1] << 16) | text[i + 2];
+    }
+
+    /**
+     * Builds the text a row is searched as: the blank cell that follows a wide
+     * character is dropped, so "终端" matches a row showing the two characters.
+     * Characters are lower-cased when {@code columns} is null (for indexing);
+     * otherwise they are kept and columns[i] receives the cell column of text[i].
+     *
+     * @return the text length
+     */
+    static int searchableText(char[] cells, int width, char[] text, int[] columns) {
+        int length = 0;
+        for (int col = 0; col < width; col++) {
+            char ch = cells[col];
+            if (columns != null) {
+                text[length] = ch;
+                columns[length] = col;
+            } else {
+                text[length] = Character.toLowerCase(ch);
+            }
+            length++;
+            if (Cell.isWideCharacter(ch) && col + 1 < width && cells[col + 1] == ' ') {
+                col++;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,35 @@
+package com.terminal;
+
+/**
+ * A search hit: the row and the cell columns [column, endColumn) it covers.
+ * Rows follow {@link TerminalBuffer}: 0 is the top screen row, negative rows are
+ * scrollback. Row numbers are only valid until the buffer scrolls again.
+ */
+public final class SearchResult {
+    private final int row;
+    private final int column;
+    private final int endColumn;
+
+    SearchResult(int row, int column, int endColumn) {
+        this.row = row;
+        this.column = column;
+        this.endColumn = endColumn;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResult{row=" + row + ", column=" + column + ", endColumn=" + endColumn + "}";
+    }
+}
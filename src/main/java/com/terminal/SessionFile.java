@@ -0,0 +1,202 @@
+package com.terminal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary save format of a buffer session, see {@link TerminalBuffer#saveSession}.
+ *
+ * Big-endian. A header of ints - magic "TBUF", version, width, height, max scrollback,
+ * cursor row and column, current attribute id, scroll region top and bottom, flags
+ * and the number of scrollback lines - followed by the scrollback lines (oldest
+ * first) and then the screen rows, each as a {@link MappedLine} record. Attribute
+ * ids are {@link AttributePalette} ids, so changing the palette layout needs a new
+ * {@link #VERSION}.
+ *
+ * Reading maps the file and hands out scrollback lines as {@link MappedLine}s, so
+ * loading only walks the record headers. Records are mapped in regions of up to
+ * 1 GB, a record never spans two regions.
+ */
+final class SessionFile {
+    static final int MAGIC = 0x54425546;  // "TBUF"
+    static final int VERSION = 1;
+
+    static final int FLAG_COMPRESS = 1;
+    static final int FLAG_INDEXED = 2;
+
+    private static final int HEADER_BYTES = 13 * Integer.BYTES;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long MAX_REGION_BYTES = 1L << 30;
+
+    final int width;
+    final int height;
+    final int maxScrollback;
+    final int cursorRow;
+    final int cursorCol;
+    final int attributes;
+    final int scrollTop;
+    final int scrollBottom;
+    final int flags;
+    final History history;
+    final Line[] screen;
+
+    SessionFile(int width, int height, int maxScrollback, int cursorRow, int cursorCol, int attributes,
+                int scrollTop, int scrollBottom, int flags, History history, Line[] screen) {
+        this.width = width;
+        this.height = height;
+        this.maxScrollback = maxScrollback;
+        this.cursorRow = cursorRow;
+        this.cursorCol = cursorCol;
+        this.attributes = attributes;
+        this.scrollTop = scrollTop;
+        this.scrollBottom = scrollBottom;
+        this.flags = flags;
+        this.history = history;
+        this.screen = screen;
+    }
+
+    /**
+     * Writes the session through a fixed-size buffer. Every line is written at the
+     * session width.
+     */
+    void write(WritableByteChannel channel) throws IOException {
+        ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        out.putInt(MAGIC).putInt(VERSION)
+                .putInt(width).putInt(height).putInt(maxScrollback)
+                .putInt(cursorRow).putInt(cursorCol).putInt(attributes)
+                .putInt(scrollTop).putInt(scrollBottom).putInt(flags)
+                .putInt(history.size()).putInt(0);  // reserved
+
+        char[] chars = new char[width];
+        int[] attrs = new int[width];
+        for (int i = 0; i < history.size(); i++) {
+            history.copyInto(i, chars, attrs, width);
+            out = putRecord(channel, out, chars, attrs, history.isWrapped(i));
+        }
+        for (Line line : screen) {
+            line.copyInto(chars, attrs, width);
+            out = putRecord(channel, out, chars, attrs, line.isWrapped());
+        }
+        drain(channel, out);
+    }
+
+    private ByteBuffer putRecord(WritableByteChannel channel, ByteBuffer out,
+                                 char[] chars, int[] attrs, boolean wrapped) throws IOException {
+        int length = width;
+        while (length > 0 && chars[length - 1] == ' ' && attrs[length - 1] == AttributePalette.DEFAULT_ID) {
+            length--;
+        }
+        int bytes = (int) MappedLine.recordBytes(length);
+        if (out.remaining() < bytes) {
+            drain(channel, out);
+            if (out.capacity() < bytes) {
+                out = ByteBuffer.allocateDirect(bytes);  // very wide rows only
+            }
+        }
+        out.putInt(width);
+        out.putInt(wrapped ? length | DiskScrollback.WRAPPED : length);
+        for (int i = 0; i < length; i++) {
+            out.putChar(chars[i]);
+        }
+        for (int i = 0; i < length; i++) {
+            out.putInt(attrs[i]);
+        }
+        return out;
+    }
+
+    private static void drain(WritableByteChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Maps a session file. The mapping outlives the channel, so the file is closed
+     * again before this returns.
+     *
+     * @throws IOException if the file can't be read, isn't a session file, has an
+     *                     unsupported version, is truncated or has screen
+     *                     cells with attribute ids outside the palette
+     */
+    static SessionFile read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            check(size >= HEADER_BYTES, "Not a terminal session file", file);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            check(header.getInt(0) == MAGIC, "Not a terminal session file", file);
+            int version = header.getInt(4);
+            check(version == VERSION, "Unsupported session file version " + version, file);
+
+            int width = header.getInt(8);
+            int height = header.getInt(12);
+            int maxScrollback = header.getInt(16);
+            int cursorRow = header.getInt(20);
+            int cursorCol = header.getInt(24);
+            int attributes = header.getInt(28);
+            int scrollTop = header.getInt(32);
+            int scrollBottom = header.getInt(36);
+            int flags = header.getInt(40);
+            int lines = header.getInt(44);
+            check(width >= 0 && height > 0 && lines >= 0 && lines <= maxScrollback
+                    && cursorRow >= 0 && cursorRow < height && cursorCol >= 0 && cursorCol <= width
+                    && attributes >= 0 && attributes < AttributePalette.SIZE
+                    && scrollTop >= 0 && scrollTop <= scrollBottom && scrollBottom < height,
+                    "Corrupt session file header", file);
+
+            History history = new History(maxScrollback);
+            Line[] screen = new Line[height];
+            ByteBuffer region = null;
+            long regionStart = 0;
+            long pos = HEADER_BYTES;
+            for (int i = 0; i < lines + height; i++) {
+                check(pos + 8 <= size, "Truncated session file", file);
+                if (region == null || pos + 8 > regionStart + region.capacity()) {
+                    region = map(channel, pos, size);
+                    regionStart = pos;
+                }
+                int at = (int) (pos - regionStart);
+                int lineWidth = region.getInt(at);
+                int length = region.getInt(at + 4) & ~DiskScrollback.WRAPPED;
+                long end = pos + MappedLine.recordBytes(length);
+                check(lineWidth >= 0 && length <= lineWidth && end <= size, "Corrupt session file", file);
+                if (end > regionStart + region.capacity()) {
+                    region = map(channel, pos, size);
+                    regionStart = pos;
+                    at = 0;
+                }
+
+                MappedLine line = new MappedLine(region, at);
+                if (i < lines) {
+                    history.restore(line);
+                } else {
+                    // screen rows are written to straight away, so they become plain lines
+                    check(line.hasValidAttributes(), "Corrupt session file", file);
+                    Line row = new Line(width);
+                    row.copyFrom(line, 0, 0, Math.min(width, lineWidth));
+                    row.setWrapped(line.isWrapped());
+                    screen[i - lines] = row;
+                }
+                pos = end;
+            }
+            return new SessionFile(width, height, maxScrollback, cursorRow, cursorCol, attributes,
+                    scrollTop, scrollBottom, flags, history, screen);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long pos, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(size - pos, MAX_REGION_BYTES));
+    }
+
+    private static void check(boolean condition, String message, Path file) throws IOException {
+        if (!condition) {
+            throw new IOException(message + ": " + file);
+        }
+    }
+}
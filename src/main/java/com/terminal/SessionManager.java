@@ -0,0 +1,186 @@
+package com.terminal;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Creates and tracks many {@link TerminalBuffer}s under one memory budget.
+ *
+ * Each session's usage is the estimated heap bytes of its screen and scrollback.
+ * When the total goes over the budget, history of the least recently viewed
+ * sessions is shrunk first, in order of how much it costs the user:
+ * <ol>
+ *   <li>compress - lines are re-encoded as compact lines, nothing is lost;</li>
+ *   <li>spill - with a spill directory, history moves to memory-mapped files;</li>
+ *   <li>trim - the oldest lines are dropped.</li>
+ * </ol>
+ * Each stage goes through all sessions, least recently viewed first, and stops as
+ * soon as the total fits. Screens are never touched.
+ *
+ * Like TerminalBuffer, the manager isn't thread-safe: use it from the thread that
+ * writes to its sessions.
+ */
+public final class SessionManager implements AutoCloseable {
+    private final long memoryBudget;
+    private final Path spillDirectory;  // null when history stays on the heap
+
+    // in view order: least recently viewed first. Viewing moves a session to the end
+    // by hand, so a plain get() can look one up without counting as a view
+    private final LinkedHashMap<String, TerminalBuffer> sessions = new LinkedHashMap<>();
+
+    /**
+     * Creates a manager whose sessions keep history on the heap.
+     */
+    public SessionManager(long memoryBudgetBytes) {
+        this(memoryBudgetBytes, null);
+    }
+
+    /**
+     * Creates a manager whose sessions can spill history to segment files under
+     * {@code spillDirectory} when over budget. Files are only created once a session
+     * actually spills.
+     */
+    public SessionManager(long memoryBudgetBytes, Path spillDirectory) {
+        if (memoryBudgetBytes < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative: " + memoryBudgetBytes);
+        }
+        this.memoryBudget = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Creates a session, which counts as the most recently viewed one, then
+     * enforces the budget.
+     *
+     * @throws IllegalArgumentException if a session with this id exists
+     */
+    public TerminalBuffer createSession(String id, int width, int height, int maxScrollback) {
+        if (sessions.containsKey(id)) {
+            throw new IllegalArgumentException("Session already exists: " + id);
+        }
+        TerminalBuffer buffer = spillDirectory == null
+                ? new TerminalBuffer(width, height, maxScrollback)
+                : new TerminalBuffer(width, height, maxScrollback, maxScrollback, spillDirectory);
+        sessions.put(id, buffer);
+        enforceBudget();
+        return buffer;
+    }
+
+    /**
+     * Returns a session and marks it as the most recently viewed, or null if there
+     * is no such session.
+     */
+    public TerminalBuffer viewSession(String id) {
+        TerminalBuffer buffer = sessions.remove(id);
+        if (buffer != null) {
+            sessions.put(id, buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Removes a session and closes its buffer.
+     *
+     * @return false if there was no such session
+     */
+    public boolean closeSession(String id) {
+        TerminalBuffer buffer = sessions.remove(id);
+        if (buffer == null) {
+            return false;
+        }
+        buffer.close();
+        return true;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Session ids, least recently viewed first.
+     */
+    public List<String> getSessionIds() {
+        return Collections.unmodifiableList(new ArrayList<>(sessions.keySet()));
+    }
+
+    /**
+     * Estimated heap bytes of one session, or 0 if there is no such session.
+     * Doesn't count as viewing it.
+     */
+    public long getSessionBytes(String id) {
+        TerminalBuffer buffer = sessions.get(id);
+        return buffer == null ? 0 : buffer.estimatedMemoryBytes();
+    }
+
+    /**
+     * Estimated heap bytes of all sessions.
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (TerminalBuffer buffer : sessions.values()) {
+            total += buffer.estimatedMemoryBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Shrinks history of the least recently viewed sessions until the total fits the
+     * budget or nothing more can be done. Call it after feeding sessions output, e.g.
+     * once per batch.
+     *
+     * @return the estimated total bytes afterwards
+     */
+    public long enforceBudget() {
+        long total = getTotalBytes();
+        if (total <= memoryBudget) {
+            return total;
+        }
+        List<TerminalBuffer> byAge = new ArrayList<>(sessions.values());
+
+        for (TerminalBuffer buffer : byAge) {
+            if (total <= memoryBudget) {
+                return total;
+            }
+            long before = buffer.estimatedMemoryBytes();
+            buffer.compactScrollback();
+            total += buffer.estimatedMemoryBytes() - before;
+        }
+        if (spillDirectory != null) {
+            for (TerminalBuffer buffer : byAge) {
+                if (total <= memoryBudget) {
+                    return total;
+                }
+                long before = buffer.estimatedMemoryBytes();
+                buffer.spillScrollback();
+                total += buffer.estimatedMemoryBytes() - before;
+            }
+        }
+        for (TerminalBuffer buffer : byAge) {
+            if (total <= memoryBudget) {
+                return total;
+            }
+            long before = buffer.estimatedMemoryBytes();
+            buffer.trimScrollback(total - memoryBudget);
+            total += buffer.estimatedMemoryBytes() - before;
+        }
+        return total;
+    }
+
+    /**
+     * Closes every session.
+     */
+    @Override
+    public void close() {
+        for (TerminalBuffer buffer : sessions.values()) {
+            buffer.close();
+        }
+        sessions.clear();
+    }
+}
@@ -1,40 +1,89 @@
 package com.terminal;
 
-import java.util.*;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
 /**
  * Terminal text buffer - stores what's displayed on screen plus scrollback history.
  *
  * Works like a real terminal: you write text at the cursor, it wraps to the next
  * line when full, and old lines scroll up into history when the screen fills.
+ *
+ * History can optionally spill to disk: only the newest lines stay on the heap and
+ * older ones are kept in memory-mapped segment files. Such a buffer should be
+ * closed to delete its files.
  */
-public class TerminalBuffer {
+public class TerminalBuffer implements AutoCloseable {
     private int width;
     private int height;
     private final int maxScrollback;
 
-    private  List<Line> screen;
-    // Scrollback uses Deque because we add/remove from both ends
-    private  Deque<Line> scrollback;
+    // Ring of rows - scrolling bumps the top index instead of shifting the rows
+    private Screen screen;
+    // The screen not being shown: the alternate one (created on first use) or,
+    // while the alternate screen is active, the primary one
+    private Screen inactiveScreen;
+    private boolean alternateActive;
+    // Hot ring of recent lines (O(1) access, append and eviction), plus an optional disk tier
+    private final History scrollback;
+    // Recycles lines evicted from scrollback so steady-state scrolling doesn't allocate
+    private final LinePool linePool;
+    // Dirty spans and scroll hint for incremental rendering
+    private final DamageTracker damage;
 
     private int cursorRow;
     private int cursorCol;
 
-    private CellAttributes currentAttributes;
+    // Scroll region (DECSTBM), inclusive screen rows - the whole screen by default
+    private int scrollTop;
+    private int scrollBottom;
+
+    private int currentAttributes;  // AttributePalette id
+
+    // Null unless metrics are enabled - hot paths only pay for the null check
+    private BufferMetrics metrics;
+
+    // Primary screen cursor and attributes, saved while the alternate screen is active
+    private int savedCursorRow;
+    private int savedCursorCol;
+    private int savedAttributes;
 
     public TerminalBuffer(int width, int height, int maxScrollback) {
+        this(width, height, maxScrollback, new History(maxScrollback));
+    }
+
+    /**
+     * Creates a buffer whose history spills to disk.
+     * The newest {@code hotScrollback} lines stay on the heap; older lines, up to
+     * {@code maxScrollback} in total, are stored in memory-mapped segment files under
+     * {@code spillDirectory} and paged back in when read.
+     */
+    public TerminalBuffer(int width, int height, int maxScrollback, int hotScrollback, Path spillDirectory) {
+        this(width, height, maxScrollback, new History(maxScrollback, hotScrollback, spillDirectory));
+    }
+
+    private TerminalBuffer(int width, int height, int maxScrollback, History scrollback) {
         this.width = width;
         this.height = height;
         this.maxScrollback = maxScrollback;
 
-        this.screen = new ArrayList<>(height);
-        for (int i = 0; i < height; i++) {
-            screen.add(new Line(width));
-        }
+        this.screen = new Screen(width, height);
 
-        this.scrollback = new LinkedList<>();
+        this.scrollback = scrollback;
+        this.linePool = new LinePool(height);
+        this.damage = new DamageTracker(width, height);
         this.cursorRow = 0;
         this.cursorCol = 0;
-        this.currentAttributes = new CellAttributes();
+        this.scrollTop = 0;
+        this.scrollBottom = height - 1;
+        this.currentAttributes = AttributePalette.DEFAULT_ID;
     }
 
     public int getWidth() {
@@ -50,11 +99,20 @@ public class TerminalBuffer {
     }
 
     public void setCurrentAttributes(CellAttributes.Color foreground, CellAttributes.Color background, CellAttributes.Style style) {
-        this.currentAttributes = new CellAttributes(foreground, background, style);
+        this.currentAttributes = AttributePalette.idOf(
+                foreground, background, style.isBold(), style.isItalic(), style.isUnderline());
     }
 
     public CellAttributes getCurrentAttributes() {
-        return currentAttributes.copy();
+        return AttributePalette.get(currentAttributes).copy();
+    }
+
+    int getCurrentAttributeId() {
+        return currentAttributes;
+    }
+
+    void setCurrentAttributeId(int attributeId) {
+        this.currentAttributes = attributeId;
     }
 
     public int getCursorRow() {
@@ -96,131 +154,515 @@ public class TerminalBuffer {
         if (text == null || text.isEmpty()) {
             return;
         }
+        write(null, text, 0, text.length());
+    }
+
+    /**
+     * Writes {@code length} characters of {@code text} starting at {@code offset}.
+     * Lets callers feed reused buffers without creating Strings.
+     */
+    public void writeText(CharSequence text, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, text.length());
+        write(null, text, offset, length);
+    }
+
+    /**
+     * Writes {@code length} characters of {@code text} starting at {@code offset}.
+     * Lets callers feed reused buffers without creating Strings.
+     */
+    public void writeText(char[] text, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, text.length);
+        write(text, null, offset, length);
+    }
 
-        for (char ch : text.toCharArray()) {
+    /**
+     * Shared write loop - exactly one of array/sequence is non-null.
+     * Runs of narrow characters are copied into the row in one pass; only wide
+     * characters and wraps at the line end go through the per-character path.
+     */
+    private void write(char[] array, CharSequence sequence, int offset, int length) {
+        if (width == 0) {
+            return;
+        }
+        long start = metrics != null ? System.nanoTime() : 0;
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
             if (cursorCol >= width) {
-                cursorCol = 0;
-                cursorRow++;
-                if (cursorRow >= height) {
-                    scrollUp();
-                    cursorRow = height - 1;
-                }
+                wrapCursor();
             }
 
-            Cell cell = new Cell(ch, currentAttributes);
-            screen.get(cursorRow).setCell(cursorCol, cell);
+            int limit = Math.min(end, i + (width - cursorCol));
+            int runEnd = i;
+            while (runEnd < limit && !Cell.isWideCharacter(charAt(array, sequence, runEnd))) {
+                runEnd++;
+            }
 
-            if (cell.isWide()) {
+            if (runEnd > i) {
+                Line line = editLine(cursorRow, cursorCol, cursorCol + (runEnd - i));
+                if (array != null) {
+                    line.setRun(cursorCol, array, i, runEnd, currentAttributes);
+                } else {
+                    line.setRun(cursorCol, sequence, i, runEnd, currentAttributes);
+                }
+                cursorCol += runEnd - i;
+                i = runEnd;
+            } else {
+                // wide character - takes this cell plus a blank one after it
+                Line line = editLine(cursorRow, cursorCol, Math.min(width, cursorCol + 2));
+                line.set(cursorCol, charAt(array, sequence, i), currentAttributes);
                 cursorCol++;
                 if (cursorCol < width) {
-                    Cell emptyCell = new Cell(' ', currentAttributes);
-                    screen.get(cursorRow).setCell(cursorCol, emptyCell);
+                    line.set(cursorCol, ' ', currentAttributes);
                 }
+                cursorCol++;
+                i++;
             }
+        }
+        if (metrics != null) {
+            metrics.charactersWritten += length;
+            metrics.writeLatency.record(System.nanoTime() - start);
+        }
+    }
 
-            cursorCol++;
+    private static char charAt(char[] array, CharSequence sequence, int index) {
+        return array != null ? array[index] : sequence.charAt(index);
+    }
+
+    // Soft-wraps to the start of the next line, scrolling when it passes the bottom
+    private void wrapCursor() {
+        if (metrics != null) {
+            metrics.wraps++;
         }
+        screen.editable(cursorRow).setWrapped(true);
+        cursorCol = 0;
+        lineFeed();
     }
+
     /**
      * Inserts text at cursor position, shifting existing content to the right.
      * Content that shifts past the line end is lost.
+     * The rest of the row is shifted once per row the text covers, not once per character.
      */
     public void insertText(String text) {
-        if (text == null || text.isEmpty()) {
+        if (text == null || text.isEmpty() || width == 0) {
             return;
         }
+        if (metrics != null) {
+            metrics.charactersInserted += text.length();
+        }
 
-        Line currentLine = screen.get(cursorRow);
-
-        for (char ch : text.toCharArray()) {
+        int i = 0;
+        while (i < text.length()) {
             if (cursorCol >= width) {
-                cursorCol = 0;
-                cursorRow++;
-                if (cursorRow >= height) {
-                    scrollUp();
-                    cursorRow = height - 1;
-                }
-                currentLine = screen.get(cursorRow);
+                wrapCursor();
             }
+            int count = Math.min(text.length() - i, width - cursorCol);
+            Line line = editLine(cursorRow, cursorCol, width);
+            line.moveCells(cursorCol, cursorCol + count, width - cursorCol - count);
+            line.setRun(cursorCol, text, i, i + count, currentAttributes);
+            cursorCol += count;
+            i += count;
+        }
+    }
 
-            for (int i = width - 1; i > cursorCol; i--) {
-                currentLine.setCell(i, currentLine.getCell(i - 1));
-            }
+    /**
+     * Inserts count blank cells at the cursor, shifting the rest of the row right
+     * (ICH). Cells shifted past the line end are lost. The cursor doesn't move.
+     */
+    public void insertChars(int count) {
+        if (width == 0) {
+            return;
+        }
+        int col = Math.min(cursorCol, width - 1);
+        int n = Math.max(0, Math.min(count, width - col));
+        Line line = editLine(cursorRow, col, width);
+        line.moveCells(col, col + n, width - col - n);
+        line.clear(col, col + n);
+    }
 
-            Cell cell = new Cell(ch, currentAttributes);
-            currentLine.setCell(cursorCol, cell);
+    /**
+     * Deletes count cells at the cursor, shifting the rest of the row left and
+     * filling the end of the row with blanks (DCH). The cursor doesn't move.
+     */
+    public void deleteChars(int count) {
+        if (width == 0) {
+            return;
+        }
+        int col = Math.min(cursorCol, width - 1);
+        int n = Math.max(0, Math.min(count, width - col));
+        Line line = editLine(cursorRow, col, width);
+        line.moveCells(col + n, col, width - col - n);
+        line.clear(width - n, width);
+    }
 
-            cursorCol++;
+    /**
+     * Blanks count cells starting at the cursor without moving anything (ECH).
+     * The cursor doesn't move.
+     */
+    public void eraseChars(int count) {
+        if (width == 0) {
+            return;
         }
+        int col = Math.min(cursorCol, width - 1);
+        int end = col + Math.max(0, Math.min(count, width - col));
+        editLine(cursorRow, col, end).clear(col, end);
     }
 
     public void fillLine(int row, char ch) {
         if (row >= 0 && row < height) {
-            screen.get(row).fill(ch, currentAttributes);
+            editLine(row, 0, width).fill(ch, currentAttributes);
         }
     }
 
     public void insertLineAtBottom() {
-        screen.add(new Line(width));
-        if (screen.size() > height) {
-            Line topLine = screen.remove(0);
-            scrollback.addLast(topLine);
+        scrollScreenUp();
+    }
+
+    /**
+     * Moves the cursor to the first column of the current row.
+     */
+    public void carriageReturn() {
+        cursorCol = 0;
+    }
+
+    /**
+     * Moves the cursor down one row. At the bottom of the scroll region the region
+     * scrolls up instead (with the default region, the whole screen).
+     */
+    public void lineFeed() {
+        if (cursorRow == scrollBottom) {
+            scrollUp(1);
+        } else if (cursorRow < height - 1) {
+            cursorRow++;
+        }
+    }
+
+    /**
+     * Moves the cursor up one row. At the top of the scroll region the region
+     * scrolls down instead (RI).
+     */
+    public void reverseIndex() {
+        if (cursorRow == scrollTop) {
+            scrollDown(1);
+        } else if (cursorRow > 0) {
+            cursorRow--;
+        }
+    }
+
+    /**
+     * Restricts scrolling to screen rows [top, bottom], inclusive (DECSTBM).
+     * Line feeds at the bottom margin and the line operations below then only move
+     * rows inside the region. An invalid region resets it to the whole screen.
+     * Like a terminal, this moves the cursor to the home position.
+     */
+    public void setScrollRegion(int top, int bottom) {
+        if (top < 0 || bottom >= height || top >= bottom) {
+            top = 0;
+            bottom = height - 1;
+        }
+        scrollTop = top;
+        scrollBottom = bottom;
+        cursorRow = 0;
+        cursorCol = 0;
+    }
+
+    public int getScrollTop() {
+        return scrollTop;
+    }
+
+    public int getScrollBottom() {
+        return scrollBottom;
+    }
+
+    /**
+     * Scrolls the scroll region up by n rows (SU), opening blank rows at its bottom.
+     * Rows leaving the top of a region that covers the whole screen go into
+     * scrollback; with a smaller region they are discarded.
+     */
+    public void scrollUp(int n) {
+        int count = Math.min(n, scrollBottom - scrollTop + 1);
+        if (count <= 0) {
+            return;
+        }
+        if (scrollTop == 0 && scrollBottom == height - 1) {
+            for (int i = 0; i < count; i++) {
+                scrollScreenUp();
+            }
+        } else {
+            screen.scrollRegionUp(scrollTop, scrollBottom, count, width, linePool);
+            markRows(scrollTop, scrollBottom);
+            if (metrics != null) {
+                metrics.scrolls += count;
+            }
+        }
+    }
 
-            while (scrollback.size() > maxScrollback) {
-                scrollback.removeFirst();
+    /**
+     * Scrolls the scroll region down by n rows (SD), opening blank rows at its top.
+     * Rows pushed off the bottom are discarded.
+     */
+    public void scrollDown(int n) {
+        int count = Math.min(n, scrollBottom - scrollTop + 1);
+        if (count <= 0) {
+            return;
+        }
+        if (scrollTop == 0 && scrollBottom == height - 1) {
+            for (int i = 0; i < count; i++) {
+                linePool.release(screen.scrollDown(linePool.acquire(width)));
             }
+        } else {
+            screen.scrollRegionDown(scrollTop, scrollBottom, count, width, linePool);
+        }
+        markRows(scrollTop, scrollBottom);
+        if (metrics != null) {
+            metrics.scrolls += count;
+        }
+    }
+
+    /**
+     * Inserts n blank rows at the cursor row, pushing the rows below it down within
+     * the scroll region (IL). Rows pushed past the bottom margin are discarded.
+     * Does nothing when the cursor is outside the region. Moves the cursor to column 0.
+     */
+    public void insertLines(int n) {
+        if (cursorRow < scrollTop || cursorRow > scrollBottom) {
+            return;
+        }
+        int count = Math.min(n, scrollBottom - cursorRow + 1);
+        if (count > 0) {
+            screen.scrollRegionDown(cursorRow, scrollBottom, count, width, linePool);
+            markRows(cursorRow, scrollBottom);
+        }
+        cursorCol = 0;
+    }
+
+    /**
+     * Deletes n rows starting at the cursor row, pulling the rows below it up within
+     * the scroll region and opening blank rows at the bottom margin (DL). Deleted rows
+     * don't go to scrollback. Does nothing when the cursor is outside the region.
+     * Moves the cursor to column 0.
+     */
+    public void deleteLines(int n) {
+        if (cursorRow < scrollTop || cursorRow > scrollBottom) {
+            return;
+        }
+        int count = Math.min(n, scrollBottom - cursorRow + 1);
+        if (count > 0) {
+            screen.scrollRegionUp(cursorRow, scrollBottom, count, width, linePool);
+            markRows(cursorRow, scrollBottom);
+        }
+        cursorCol = 0;
+    }
+
+    private void markRows(int first, int last) {
+        for (int row = first; row <= last; row++) {
+            damage.markRow(row);
+        }
+    }
+
+    /**
+     * Erases part of the cursor row (EL semantics).
+     * Mode 0 erases from the cursor to the end of the line, 1 from the start of the
+     * line up to and including the cursor, 2 the whole line. The cursor doesn't move.
+     */
+    public void eraseInLine(int mode) {
+        int col = Math.min(cursorCol, width - 1);
+        switch (mode) {
+            case 0:
+                editLine(cursorRow, col, width).clear(col, width);
+                break;
+            case 1:
+                editLine(cursorRow, 0, col + 1).clear(0, col + 1);
+                break;
+            case 2:
+                editLine(cursorRow, 0, width).clear(0, width);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Erases part of the screen (ED semantics).
+     * Mode 0 erases from the cursor to the end of the screen, 1 from the top of the
+     * screen up to and including the cursor, 2 the whole screen and 3 the scrollback.
+     * The cursor doesn't move.
+     */
+    public void eraseInDisplay(int mode) {
+        switch (mode) {
+            case 0:
+                eraseInLine(0);
+                for (int row = cursorRow + 1; row < height; row++) {
+                    editLine(row, 0, width).clear(0, width);
+                }
+                break;
+            case 1:
+                for (int row = 0; row < cursorRow; row++) {
+                    editLine(row, 0, width).clear(0, width);
+                }
+                eraseInLine(1);
+                break;
+            case 2:
+                for (int row = 0; row < height; row++) {
+                    editLine(row, 0, width).clear(0, width);
+                }
+                break;
+            case 3:
+                clearScrollback();
+                break;
+            default:
+                break;
         }
     }
 
     public void clearScreen() {
         for (int i = 0; i < height; i++) {
-            screen.set(i, new Line(width));
+            screen.editable(i).reset(width);
+        }
+        damage.markAll();
+        cursorRow = 0;
+        cursorCol = 0;
+    }
+
+    /**
+     * Switches to the alternate screen (like DEC private mode 1049): saves the cursor
+     * and attributes, then shows a blank screen of the same size. Nothing written to
+     * the alternate screen goes into scrollback. No-op if it is already active.
+     *
+     * The screens are swapped by reference, so the primary screen is neither copied
+     * nor touched while the alternate one is in use.
+     */
+    public void enterAlternateScreen() {
+        if (alternateActive) {
+            return;
+        }
+        savedCursorRow = cursorRow;
+        savedCursorCol = cursorCol;
+        savedAttributes = currentAttributes;
+        if (inactiveScreen == null) {
+            inactiveScreen = new Screen(width, height);
+        }
+        swapScreens();
+        for (int i = 0; i < height; i++) {
+            screen.editable(i).reset(width);
         }
         cursorRow = 0;
         cursorCol = 0;
     }
 
+    /**
+     * Switches back to the primary screen and restores the cursor and attributes
+     * saved by {@link #enterAlternateScreen()}. No-op if the primary screen is active.
+     */
+    public void exitAlternateScreen() {
+        if (!alternateActive) {
+            return;
+        }
+        swapScreens();
+        cursorRow = savedCursorRow;
+        cursorCol = savedCursorCol;
+        currentAttributes = savedAttributes;
+    }
+
+    public boolean isAlternateScreenActive() {
+        return alternateActive;
+    }
+
+    private void swapScreens() {
+        Screen shown = screen;
+        screen = inactiveScreen;
+        inactiveScreen = shown;
+        alternateActive = !alternateActive;
+        damage.markAll();
+    }
+
     public void clearAll() {
         clearScreen();
-        scrollback.clear();
+        clearScrollback();
+    }
+
+    private void clearScrollback() {
+        scrollback.clear(linePool);
     }
 
     public char getCharAt(int row, int col) {
-        return getCellAt(row, col).getCharacter();
+        if (col < 0 || col >= width) {
+            return ' ';
+        }
+        if (row < 0) {
+            int scrollbackIndex = scrollback.size() + row;
+            return scrollbackIndex >= 0 ? scrollback.getChar(scrollbackIndex, col) : ' ';
+        }
+        return row < height ? screen.get(row).getChar(col) : ' ';
     }
 
+    /**
+     * Returns the attributes at a position. The returned instance is shared and immutable.
+     */
     public CellAttributes getAttributesAt(int row, int col) {
-        return getCellAt(row, col).getAttributes();
+        return AttributePalette.get(getAttributeIdAt(row, col));
     }
 
-    //helper function
-    private Cell getCellAt(int row, int col) {
+    //helper function - default attributes outside screen and scrollback
+    private int getAttributeIdAt(int row, int col) {
         if (col < 0 || col >= width) {
-            return new Cell();
+            return AttributePalette.DEFAULT_ID;
         }
+        if (row < 0) {
+            int scrollbackIndex = scrollback.size() + row;
+            return scrollbackIndex >= 0 ? scrollback.getAttr(scrollbackIndex, col) : AttributePalette.DEFAULT_ID;
+        }
+        return row < height ? screen.get(row).getAttr(col) : AttributePalette.DEFAULT_ID;
+    }
 
+    /**
+     * Copies a row's characters and attribute ids into the given arrays, which must
+     * hold at least {@link #getWidth()} entries. Rows use the same numbering as
+     * {@link #getLineAsString(int)}; rows that don't exist come back as default blanks.
+     * Nothing is allocated, so a renderer can reuse the same two arrays for every row.
+     * Resolve ids with {@link CellAttributes#forId(int)}.
+     */
+    public void copyRow(int row, char[] chars, int[] attributeIds) {
+        if (chars.length < width || attributeIds.length < width) {
+            throw new IllegalArgumentException("Arrays must hold at least " + width + " cells");
+        }
         if (row < 0) {
             int scrollbackIndex = scrollback.size() + row;
             if (scrollbackIndex >= 0) {
-                // Convert deque to list for indexed access
-                List<Line> scrollbackList = new ArrayList<>(scrollback);
-                return scrollbackList.get(scrollbackIndex).getCell(col);
+                scrollback.copyInto(scrollbackIndex, chars, attributeIds, width);
+                return;
             }
-            return new Cell();
         } else if (row < height) {
-            return screen.get(row).getCell(col);
+            screen.get(row).copyInto(chars, attributeIds, width);
+            return;
         }
+        Arrays.fill(chars, 0, width, ' ');
+        Arrays.fill(attributeIds, 0, width, AttributePalette.DEFAULT_ID);
+    }
 
-        return new Cell();
+    /**
+     * Passes every cell of rows [fromRow, toRow) to the visitor, row by row. Rows use
+     * the same numbering as {@link #getLineAsString(int)} and the range is clipped to
+     * existing rows. Nothing is allocated per cell or per row.
+     */
+    public void forEachCell(int fromRow, int toRow, CellVisitor visitor) {
+        int first = Math.max(fromRow, -scrollback.size());
+        int last = Math.min(toRow, height);
+        for (int row = first; row < last; row++) {
+            if (row < 0) {
+                scrollback.forEachCell(scrollback.size() + row, row, width, visitor);
+            } else {
+                screen.get(row).forEachCell(row, width, visitor);
+            }
+        }
     }
 
     public String getLineAsString(int row) {
         if (row < 0) {
             int scrollbackIndex = scrollback.size() + row;
             if (scrollbackIndex >= 0) {
-                // Convert deque to list for indexed access
-                List<Line> scrollbackList = new ArrayList<>(scrollback);
-                return scrollbackList.get(scrollbackIndex).asString();
+                return scrollback.asString(scrollbackIndex, width);
             }
             return "";
         } else if (row < height) {
@@ -241,10 +683,13 @@ public class TerminalBuffer {
     }
 
     public String getAllContent() {
+        long start = metrics != null ? System.nanoTime() : 0;
+        ExportEvent event = new ExportEvent();
+        event.begin();
         StringBuilder sb = new StringBuilder();
 
-        for (Line line : scrollback) {
-            sb.append(line.asString()).append('\n');
+        for (int i = 0; i < scrollback.size(); i++) {
+            sb.append(scrollback.asString(i, width)).append('\n');
         }
 
         for (int i = 0; i < height; i++) {
@@ -254,53 +699,465 @@ public class TerminalBuffer {
             }
         }
 
+        if (event.shouldCommit()) {
+            event.rows = scrollback.size() + height;
+            event.commit();
+        }
+        if (metrics != null) {
+            metrics.exportLatency.record(System.nanoTime() - start);
+        }
         return sb.toString();
     }
 
-    private void scrollUp() {
-        if (!screen.isEmpty()) {
-            Line topLine = screen.remove(0);
-            scrollback.addLast(topLine);
+    /**
+     * Streams the whole scrollback and screen to {@code out} as plain text.
+     * Produces the same text as {@link #getAllContent()} without building it in memory.
+     */
+    public void exportContent(Appendable out) throws IOException {
+        exportContent(out, -scrollback.size(), height, false);
+    }
 
-            while (scrollback.size() > maxScrollback) {
-                scrollback.removeFirst();
-            }
+    /**
+     * Streams rows [fromRow, toRow) to {@code out}, one '\n'-separated line per row.
+     * Rows use the same numbering as {@link #getLineAsString(int)} and the range is
+     * clipped to existing rows. With {@code withAttributes}, colors and styles are
+     * written as SGR escape sequences. Memory use stays bounded regardless of how
+     * many rows are exported; writing to a {@link Writer} avoids intermediate Strings.
+     */
+    public void exportContent(Appendable out, int fromRow, int toRow, boolean withAttributes) throws IOException {
+        long start = metrics != null ? System.nanoTime() : 0;
+        ExportEvent event = new ExportEvent();
+        event.begin();
+        new TextExporter(out, withAttributes).export(scrollback, screen::get, width, height, fromRow, toRow);
+        if (event.shouldCommit()) {
+            event.rows = Math.max(0, Math.min(toRow, height) - Math.max(fromRow, -scrollback.size()));
+            event.withAttributes = withAttributes;
+            event.commit();
+        }
+        if (metrics != null) {
+            metrics.exportLatency.record(System.nanoTime() - start);
+        }
+    }
 
-            screen.add(new Line(width));
+    /**
+     * Streams rows [fromRow, toRow) to a blocking channel as UTF-8.
+     * See {@link #exportContent(Appendable, int, int, boolean)}. The channel is not closed.
+     */
+    public void exportContent(WritableByteChannel channel, int fromRow, int toRow, boolean withAttributes) throws IOException {
+        Writer writer = TextExporter.utf8Writer(channel);
+        exportContent(writer, fromRow, toRow, withAttributes);
+        writer.flush();
+    }
+
+    /**
+     * Writes the session - dimensions, cursor, current attributes, scroll region, the
+     * screen and the whole scrollback with attributes - to {@code channel} in a
+     * versioned binary format. Lines are stored with trailing blanks dropped, so the
+     * file is no bigger than the rows take in memory. While the alternate screen is
+     * active, the primary screen and its saved cursor are written instead: whatever
+     * drew the alternate screen won't be around after a restore. The channel is not closed.
+     */
+    public void saveSession(WritableByteChannel channel) throws IOException {
+        Screen primary = alternateActive ? inactiveScreen : screen;
+        Line[] rows = new Line[height];
+        for (int row = 0; row < height; row++) {
+            rows[row] = primary.get(row);
         }
+        int flags = (scrollback.isCompress() ? SessionFile.FLAG_COMPRESS : 0)
+                | (scrollback.isIndexed() ? SessionFile.FLAG_INDEXED : 0);
+        new SessionFile(width, height, maxScrollback,
+                alternateActive ? savedCursorRow : cursorRow,
+                alternateActive ? savedCursorCol : cursorCol,
+                alternateActive ? savedAttributes : currentAttributes,
+                scrollTop, scrollBottom, flags, scrollback, rows).write(channel);
+    }
+
+    /**
+     * Restores a session written by {@link #saveSession}.
+     *
+     * The file is memory-mapped and scrollback lines are read from the mapping when
+     * accessed rather than decoded up front, so the buffer is usable right away even
+     * with a deep history. If the session had the search index on, it is rebuilt on
+     * the first search. The returned buffer keeps its history on the heap. The
+     * file must not be modified or truncated while the buffer is in use.
+     *
+     * @throws IOException if the file can't be read, isn't a saved session or has an
+     *                     unsupported version
+     */
+    public static TerminalBuffer loadSession(Path file) throws IOException {
+        SessionFile session = SessionFile.read(file);
+        TerminalBuffer buffer = new TerminalBuffer(session.width, session.height, session.maxScrollback, session.history);
+        for (int row = 0; row < session.height; row++) {
+            buffer.screen.set(row, session.screen[row]);
+        }
+        buffer.cursorRow = session.cursorRow;
+        buffer.cursorCol = session.cursorCol;
+        buffer.currentAttributes = session.attributes;
+        buffer.scrollTop = session.scrollTop;
+        buffer.scrollBottom = session.scrollBottom;
+        buffer.setScrollbackCompression((session.flags & SessionFile.FLAG_COMPRESS) != 0);
+        if ((session.flags & SessionFile.FLAG_INDEXED) != 0) {
+            // indexing reads every line, so leave it to the first search
+            buffer.scrollback.setIndexedLazily();
+        }
+        return buffer;
+    }
+
+    /**
+     * Turns the scrollback search index on or off.
+     *
+     * With the index on, each line entering scrollback is indexed by trigram and
+     * plain-text searches of three or more characters only read lines that can
+     * match, which keeps repeated "find next" interactive in very deep history.
+     * It costs memory proportional to the history and some work per scrolled line,
+     * so it is off by default. Turning it on indexes the existing history.
+     */
+    public void setSearchIndexEnabled(boolean enabled) {
+        scrollback.setIndexed(enabled);
+    }
+
+    public boolean isSearchIndexEnabled() {
+        return scrollback.isIndexed();
+    }
+
+    /**
+     * Finds {@code text} in scrollback and screen.
+     * Forward returns the first match starting at or after (fromRow, fromCol);
+     * backward the last match starting before it. Rows use the same numbering as
+     * {@link #getLineAsString(int)} and the blank cell after a wide character is
+     * not part of the searched text.
+     *
+     * @return the match, or null if there is none
+     */
+    public SearchResult find(String text, boolean ignoreCase, int fromRow, int fromCol, boolean forward) {
+        return new BufferSearch(scrollback, screen::get, width, height)
+                .find(text, ignoreCase, fromRow, fromCol, forward);
+    }
+
+    /**
+     * Finds a regex match, searching like {@link #find(String, boolean, int, int, boolean)}.
+     * Matches don't span rows. Regex searches can't use the index and scan every row.
+     */
+    public SearchResult find(Pattern pattern, int fromRow, int fromCol, boolean forward) {
+        return new BufferSearch(scrollback, screen::get, width, height)
+                .find(pattern, fromRow, fromCol, forward);
+    }
+
+    /**
+     * Moves the top row into scrollback and opens a blank row at the bottom.
+     * When history is full, the evicted line goes back to the pool and is reused.
+     * The alternate screen has no scrollback, its top row goes straight to the pool.
+     */
+    private void scrollScreenUp() {
+        if (alternateActive) {
+            linePool.release(screen.scrollUp(linePool.acquire(width)));
+        } else {
+            int before = scrollback.size();
+            linePool.release(scrollback.add(screen.get(0)));
+            screen.scrollUp(linePool.acquire(width));
+            if (metrics != null) {
+                metrics.scrollbackEvictions += before + 1 - scrollback.size();
+            }
+        }
+        if (metrics != null) {
+            metrics.scrolls++;
+        }
+        damage.scrolled();
+    }
+
+    /**
+     * Returns a screen row for modification, recording [fromCol, toCol) as damaged.
+     * Every write to screen cells goes through here.
+     */
+    private Line editLine(int row, int fromCol, int toCol) {
+        damage.mark(row, fromCol, toCol);
+        return screen.editable(row);
     }
-    // TODO: preserve content better during shrink
-    // Currently just scrolls excess lines away
+    /**
+     * Resizes the screen, re-wrapping text to the new width.
+     *
+     * Lines that were wrapped because text ran past the right edge are joined and
+     * wrapped again at the new width, wide characters included; lines ended by a
+     * line feed stay separate. The cursor keeps its place in the text. If the
+     * content doesn't fit the new height, rows at the top move into scrollback
+     * until it does; should that take the cursor's row too, the cursor stays on
+     * the top row.
+     *
+     * In-memory history is re-wrapped as well, in parallel chunks once it is large,
+     * and only when the width changes. Lines already spilled to disk keep their
+     * width and are padded or clipped when read.
+     *
+     * While the alternate screen is active, the primary screen (and the saved
+     * cursor) are re-wrapped as above, and the alternate screen is just clipped or
+     * padded - applications redraw it after a resize anyway.
+     */
     public void resize(int newWidth, int newHeight) {
-        for (Line line : screen) {
-            line.resize(newWidth);
+        long start = metrics != null ? System.nanoTime() : 0;
+        ResizeEvent event = new ResizeEvent();
+        event.begin();
+        int oldWidth = width;
+        int oldHeight = height;
+
+        if (alternateActive) {
+            Screen alternate = screen;
+            int alternateRow = cursorRow;
+            int alternateCol = cursorCol;
+            int shift = Math.max(0, alternateRow - (newHeight - 1));
+            List<Line> rows = new ArrayList<>(newHeight);
+            for (int row = 0; row < height; row++) {
+                Line line = alternate.get(row);
+                if (row < shift || row >= shift + newHeight) {
+                    linePool.release(line);
+                } else if (newWidth == width) {
+                    rows.add(line);
+                } else {
+                    Line clipped = linePool.acquire(newWidth);
+                    clipped.copyFrom(line, 0, 0, Math.min(width, newWidth));
+                    linePool.release(line);
+                    rows.add(clipped);
+                }
+            }
+            alternate.replace(rows, newHeight, newWidth, linePool);
+
+            screen = inactiveScreen;
+            cursorRow = savedCursorRow;
+            cursorCol = savedCursorCol;
+            reflowScreen(newWidth, newHeight);
+            savedCursorRow = cursorRow;
+            savedCursorCol = cursorCol;
+
+            inactiveScreen = screen;
+            screen = alternate;
+            cursorRow = Math.max(0, Math.min(newHeight - 1, alternateRow - shift));
+            cursorCol = Math.min(newWidth, alternateCol);
+        } else {
+            reflowScreen(newWidth, newHeight);
+            // a stale alternate screen is cheaper to recreate than to resize
+            inactiveScreen = null;
         }
-        for (Line line : scrollback) {
-            line.resize(newWidth);
+
+        if (event.shouldCommit()) {
+            event.oldWidth = oldWidth;
+            event.oldHeight = oldHeight;
+            event.newWidth = newWidth;
+            event.newHeight = newHeight;
+            event.scrollbackLines = scrollback.size();
+            event.commit();
         }
+        if (metrics != null) {
+            metrics.resizeLatency.record(System.nanoTime() - start);
+        }
+    }
 
-        if (newHeight > height) {
-            while (screen.size() < newHeight) {
-                screen.add(new Line(newWidth));
+    private void reflowScreen(int newWidth, int newHeight) {
+        // screen rows up to the cursor or the last non-blank row hold content
+        int contentRows = cursorRow + 1;
+        for (int row = height - 1; row >= contentRows; row--) {
+            if (screen.get(row).contentLength() > 0) {
+                contentRows = row + 1;
+                break;
             }
-        } else if (newHeight < height) {
-            while (screen.size() > newHeight) {
-                Line line = screen.remove(0);
-                scrollback.addLast(line);
+        }
 
-                while (scrollback.size() > maxScrollback) {
-                    scrollback.removeFirst();
+        List<Line> content;
+        int newCursorRow;
+        int newCursorCol;
+        if (newWidth != width) {
+            List<LineView> rows = scrollback.reflow(newWidth, linePool);
+            int cursorIndex = rows.size() + cursorRow;
+            for (int row = 0; row < contentRows; row++) {
+                rows.add(screen.get(row));
+            }
+            Reflow reflow = new Reflow(newWidth);
+            reflow.trackCursor(cursorIndex, cursorCol);
+            content = reflow.rewrap(rows, 0, rows.size());
+            newCursorRow = reflow.getCursorRow();
+            newCursorCol = reflow.getCursorCol();
+            for (int row = 0; row < height; row++) {
+                linePool.release(screen.get(row));
+            }
+        } else {
+            content = new ArrayList<>(contentRows);
+            for (int row = 0; row < height; row++) {
+                if (row < contentRows) {
+                    content.add(screen.get(row));
+                } else {
+                    linePool.release(screen.get(row));
                 }
             }
+            newCursorRow = cursorRow;
+            newCursorCol = cursorCol;
+        }
+
+        // rows that don't fit scroll into history from the top, so nothing is lost -
+        // even if that takes the cursor row with them (the cursor is clamped below)
+        int overflow = Math.max(0, content.size() - newHeight);
+        for (int i = 0; i < overflow; i++) {
+            linePool.release(scrollback.add(content.get(i)));
         }
+        screen.replace(content.subList(overflow, content.size()), newHeight, newWidth, linePool);
 
         this.width = newWidth;
         this.height = newHeight;
+        this.scrollTop = 0;
+        this.scrollBottom = newHeight - 1;
+        damage.resize(newWidth, newHeight);
+
+        // the column may sit just past the edge, like after writing a full line
+        cursorRow = Math.max(0, Math.min(newHeight - 1, newCursorRow - overflow));
+        cursorCol = Math.max(0, Math.min(newWidth, newCursorCol));
+    }
+
+    /**
+     * Captures an immutable view of the screen, scrollback and cursor.
+     *
+     * Costs O(height): rows are shared with the snapshot rather than copied, and the
+     * buffer copies a row only when it next writes to it. Call this from the thread
+     * that writes to the buffer; the returned snapshot can then be handed to any
+     * number of reader threads (publish it through a volatile field or a concurrent
+     * queue) and read without blocking the writer.
+     */
+    public TerminalSnapshot snapshot() {
+        return new TerminalSnapshot(width, height, cursorRow, cursorCol, screen.share(), scrollback.snapshot());
+    }
 
-        setCursorPosition(cursorRow, cursorCol);
+    // Current screen row, read-only - for FrameEncoder
+    Line screenLine(int row) {
+        return screen.get(row);
+    }
+
+    /**
+     * Returns the screen damage recorded since the previous call and resets tracking.
+     * The first call after creation, a clear or a resize reports a full repaint.
+     */
+    public DamageReport collectDamage() {
+        return damage.collect();
     }
 
     public int getScrollbackSize() {
         return scrollback.size();
     }
+
+    /**
+     * Turns compression of lines entering scrollback on or off.
+     *
+     * When on, each line that scrolls off the screen is stored in a compact encoding
+     * (trailing blanks dropped, text packed, attributes as runs) and decoded on read.
+     * That typically cuts history memory by an order of magnitude, at the cost of a
+     * small allocation per scrolled line. Lines already in history are not re-encoded.
+     */
+    public void setScrollbackCompression(boolean enabled) {
+        scrollback.setCompress(enabled);
+    }
+
+    public boolean isScrollbackCompression() {
+        return scrollback.isCompress();
+    }
+
+    /**
+     * How much smaller compressed history lines are than they would be uncompressed
+     * (e.g. 12.0 means 12x), or 1.0 when no compressed lines are held in memory.
+     */
+    public double getScrollbackCompressionRatio() {
+        return scrollback.compressionRatio();
+    }
+
+    /**
+     * Turns metrics collection on or off. Turning it on starts from zero; with it off
+     * the buffer's hot paths cost the same as without instrumentation.
+     *
+     * JFR events for resize and export ({@code com.terminal.Resize},
+     * {@code com.terminal.Export}) are independent of this and are emitted whenever
+     * a flight recording enables them.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if (!enabled) {
+            metrics = null;
+        } else if (metrics == null) {
+            metrics = new BufferMetrics(this);
+        }
+    }
+
+    /**
+     * Returns the live metrics, or null when metrics are off.
+     */
+    public BufferMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Memory-budget hooks for SessionManager
+
+    // Compresses the lines already in scrollback, and from now on every new one
+    void compactScrollback() {
+        scrollback.setCompress(true);
+        scrollback.compactAll(linePool);
+    }
+
+    // Moves in-memory scrollback to the disk tier; false when there is none
+    boolean spillScrollback() {
+        return scrollback.spill(0, linePool);
+    }
+
+    // Drops the oldest scrollback lines until about the given bytes are freed
+    long trimScrollback(long bytes) {
+        return scrollback.trimOldest(bytes, linePool);
+    }
+
+    /**
+     * Estimated heap bytes retained by the screen (both screens once the alternate
+     * one was used) and the in-memory scrollback. Kept up to date as lines come and
+     * go, so this is O(1) and cheap enough to poll. Lines spilled to disk don't count.
+     */
+    public long estimatedMemoryBytes() {
+        long screenBytes = (long) height * Line.estimatedBytes(width);
+        if (inactiveScreen != null) {
+            screenBytes *= 2;
+        }
+        return screenBytes + scrollback.heapBytes();
+    }
+
+    /**
+     * Limits the estimated heap bytes of scrollback, on top of the line limit.
+     *
+     * Once history goes over the limit, its oldest lines are dropped (or moved to
+     * disk, for a buffer that spills), so wide lines take more of the budget than
+     * narrow ones and a resize can't blow up memory. To limit by bytes only, create
+     * the buffer with a very large maxScrollback. Applies immediately.
+     * Pass {@link Long#MAX_VALUE} to remove the limit.
+     *
+     * @throws IllegalArgumentException if maxBytes is negative
+     */
+    public void setMaxScrollbackBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Scrollback byte limit must not be negative: " + maxBytes);
+        }
+        scrollback.setMaxBytes(maxBytes, linePool);
+    }
+
+    public long getMaxScrollbackBytes() {
+        return scrollback.getMaxBytes();
+    }
+
+    /**
+     * Deletes the history's segment files, if it spills to disk. Snapshots taken
+     * earlier stay readable. No-op for heap-only buffers.
+     */
+    @Override
+    public void close() {
+        scrollback.close();
+    }
+
+    /**
+     * Number of times a new row was served from the line pool instead of being allocated.
+     */
+    public long getLinePoolHits() {
+        return linePool.getHits();
+    }
+
+    /**
+     * Number of times the line pool was empty and a new row had to be allocated.
+     */
+    public long getLinePoolMisses() {
+        return linePool.getMisses();
+    }
 }
\ No newline at end of file
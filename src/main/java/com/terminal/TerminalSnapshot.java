@@ -0,0 +1,160 @@
+package com.terminal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Immutable view of a {@link TerminalBuffer} at one point in time.
+ *
+ * Created by {@link TerminalBuffer#snapshot()}. Rows are shared with the buffer
+ * and copied by the buffer on its next write (copy-on-write), so taking a snapshot
+ * doesn't copy unchanged lines. Safe to read from any thread once published.
+ * Row indices follow the buffer: 0 is the top screen row, negative rows are scrollback.
+ */
+public final class TerminalSnapshot {
+    private final int width;
+    private final int height;
+    private final int cursorRow;
+    private final int cursorCol;
+    private final Line[] screen;
+    private final History scrollback;
+
+    TerminalSnapshot(int width, int height, int cursorRow, int cursorCol, Line[] screen, History scrollback) {
+        this.width = width;
+        this.height = height;
+        this.cursorRow = cursorRow;
+        this.cursorCol = cursorCol;
+        this.screen = screen;
+        this.scrollback = scrollback;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getCursorRow() {
+        return cursorRow;
+    }
+
+    public int getCursorCol() {
+        return cursorCol;
+    }
+
+    public int getScrollbackSize() {
+        return scrollback.size();
+    }
+
+    public char getCharAt(int row, int col) {
+        if (col < 0 || col >= width) {
+            return ' ';
+        }
+        if (row < 0) {
+            int scrollbackIndex = scrollback.size() + row;
+            return scrollbackIndex >= 0 ? scrollback.getChar(scrollbackIndex, col) : ' ';
+        }
+        return row < height ? screen[row].getChar(col) : ' ';
+    }
+
+    /**
+     * Returns the attributes at a position. The returned instance is shared and immutable.
+     */
+    public CellAttributes getAttributesAt(int row, int col) {
+        int id = AttributePalette.DEFAULT_ID;
+        if (col >= 0 && col < width) {
+            if (row < 0) {
+                int scrollbackIndex = scrollback.size() + row;
+                if (scrollbackIndex >= 0) {
+                    id = scrollback.getAttr(scrollbackIndex, col);
+                }
+            } else if (row < height) {
+                id = screen[row].getAttr(col);
+            }
+        }
+        return AttributePalette.get(id);
+    }
+
+    /**
+     * Copies a row's characters and attribute ids into the given arrays, which must
+     * hold at least {@link #getWidth()} entries. Rows use the same numbering as
+     * {@link #getLineAsString(int)}; rows that don't exist come back as default blanks.
+     * See {@link TerminalBuffer#copyRow(int, char[], int[])}.
+     */
+    public void copyRow(int row, char[] chars, int[] attributeIds) {
+        if (chars.length < width || attributeIds.length < width) {
+            throw new IllegalArgumentException("Arrays must hold at least " + width + " cells");
+        }
+        if (row < 0) {
+            int scrollbackIndex = scrollback.size() + row;
+            if (scrollbackIndex >= 0) {
+                scrollback.copyInto(scrollbackIndex, chars, attributeIds, width);
+                return;
+            }
+        } else if (row < height) {
+            screen[row].copyInto(chars, attributeIds, width);
+            return;
+        }
+        Arrays.fill(chars, 0, width, ' ');
+        Arrays.fill(attributeIds, 0, width, AttributePalette.DEFAULT_ID);
+    }
+
+    /**
+     * Passes every cell of rows [fromRow, toRow) to the visitor, row by row. Rows use
+     * the same numbering as {@link #getLineAsString(int)} and the range is clipped to
+     * existing rows. Nothing is allocated, so a render thread can walk each new
+     * snapshot without producing garbage.
+     */
+    public void forEachCell(int fromRow, int toRow, CellVisitor visitor) {
+        int first = Math.max(fromRow, -scrollback.size());
+        int last = Math.min(toRow, height);
+        for (int row = first; row < last; row++) {
+            if (row < 0) {
+                scrollback.forEachCell(scrollback.size() + row, row, width, visitor);
+            } else {
+                screen[row].forEachCell(row, width, visitor);
+            }
+        }
+    }
+
+    public String getLineAsString(int row) {
+        if (row < 0) {
+            int scrollbackIndex = scrollback.size() + row;
+            return scrollbackIndex >= 0 ? scrollback.asString(scrollbackIndex, width) : "";
+        }
+        return row < height ? screen[row].asString() : "";
+    }
+
+    public String getScreenContent() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < height; i++) {
+            sb.append(screen[i].asString());
+            if (i < height - 1) {
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Streams rows [fromRow, toRow) to {@code out}, optionally with SGR escapes.
+     * Same format as {@link TerminalBuffer#exportContent(Appendable, int, int, boolean)};
+     * handy for saving a log from a background thread while the buffer keeps running.
+     */
+    public void exportContent(Appendable out, int fromRow, int toRow, boolean withAttributes) throws IOException {
+        new TextExporter(out, withAttributes).export(scrollback, row -> screen[row], width, height, fromRow, toRow);
+    }
+
+    /**
+     * Streams rows [fromRow, toRow) to a blocking channel as UTF-8. The channel is not closed.
+     */
+    public void exportContent(WritableByteChannel channel, int fromRow, int toRow, boolean withAttributes) throws IOException {
+        Writer writer = TextExporter.utf8Writer(channel);
+        exportContent(writer, fromRow, toRow, withAttributes);
+        writer.flush();
+    }
+}
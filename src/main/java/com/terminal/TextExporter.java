@@ -0,0 +1,249 @@
+package com.terminal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntFunction;
+
+/**
+ * Streams a range of rows (scrollback and screen) to an {@link Appendable}.
+ *
+ * Memory use is bounded by the width: each row is copied into a reusable row
+ * buffer and written out through a fixed-size chunk, so exporting a deep history
+ * never builds the whole text in memory. Rows are separated by '\n' and keep their
+ * trailing blanks, matching {@link TerminalBuffer#getAllContent()}.
+ *
+ * With SGR enabled, attribute changes are written as {@code ESC [ ... m} sequences
+ * that VtParser (or any terminal) understands. Each row that ends with non-default
+ * attributes is closed with a reset, so every exported row renders on its own.
+ *
+ * {@link FrameEncoder} also uses it to write cell spans and cursor controls for a
+ * remote terminal; there the attributes carry over from one span to the next.
+ */
+final class TextExporter {
+    private static final int CHUNK_SIZE = 8192;
+    // longest SGR sequence we write: ESC [ 0;1;3;4;97;107 m
+    private static final int MAX_SGR_LENGTH = 20;
+
+    private final Appendable out;
+    private final boolean sgr;
+    private final char[] chunk = new char[CHUNK_SIZE];
+    private final CharBuffer chunkView = CharBuffer.wrap(chunk);
+    private int chunkLength;
+    private int current = AttributePalette.DEFAULT_ID;  // attributes the receiver has now
+
+    TextExporter(Appendable out, boolean sgr) {
+        this.out = out;
+        this.sgr = sgr;
+    }
+
+    /**
+     * Returns a Writer that encodes UTF-8 into the channel through a bounded buffer.
+     * Flush it when done; closing it would close the channel too.
+     */
+    static Writer utf8Writer(WritableByteChannel channel) {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return Channels.newWriter(channel, encoder, CHUNK_SIZE);
+    }
+
+    /**
+     * Writes rows [fromRow, toRow) in buffer coordinates: negative rows are scrollback,
+     * 0 is the top screen row. The range is clipped to the rows that exist.
+     */
+    void export(History history, IntFunction<Line> screen, int width, int height,
+                int fromRow, int toRow) throws IOException {
+        int first = Math.max(fromRow, -history.size());
+        int last = Math.min(toRow, height);
+        char[] chars = new char[width];
+        int[] attrs = new int[width];
+
+        for (int row = first; row < last; row++) {
+            if (row < 0) {
+                history.copyInto(history.size() + row, chars, attrs, width);
+            } else {
+                screen.apply(row).copyInto(chars, attrs, width);
+            }
+            writeRow(chars, attrs, width);
+            if (row < last - 1) {
+                put('\n');
+            }
+        }
+        flush();
+    }
+
+    private void writeRow(char[] chars, int[] attrs, int width) throws IOException {
+        for (int col = 0; col < width; col++) {
+            if (sgr && attrs[col] != current) {
+                current = attrs[col];
+                writeSgr(current);
+            }
+            put(chars[col]);
+        }
+        if (current != AttributePalette.DEFAULT_ID) {
+            current = AttributePalette.DEFAULT_ID;
+            writeSgr(current);
+        }
+    }
+
+    /**
+     * Writes cells [from, to) of row {@code row} as a terminal would receive them:
+     * attribute changes as SGR, and the blank placeholder after a wide character
+     * skipped, since the wide character itself advances the receiver's cursor by two
+     * cells. When the cell after a wide character is something else (it was written
+     * over), the cursor is moved back onto it and it is sent too, even past
+     * {@code to} - the receiver just blanked it.
+     */
+    void writeSpan(LineView line, int row, int from, int to) throws IOException {
+        int width = line.getWidth();
+        for (int col = from; col < to; col++) {
+            int attr = line.getAttr(col);
+            if (attr != current) {
+                current = attr;
+                writeSgr(current);
+            }
+            char ch = line.getChar(col);
+            put(ch);
+            if (Cell.isWideCharacter(ch) && col + 1 < width) {
+                if (isWidePlaceholder(line, col + 1)) {
+                    col++;
+                } else {
+                    writeCursorPosition(row, col + 1);
+                    to = Math.max(to, col + 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * True if a cell is the blank right half of the wide character before it, as
+     * writeText leaves it, rather than a cell written over that half later.
+     */
+    static boolean isWidePlaceholder(LineView line, int col) {
+        return col > 0 && col < line.getWidth() && Cell.isWideCharacter(line.getChar(col - 1))
+                && line.getChar(col) == ' ' && line.getAttr(col) == line.getAttr(col - 1);
+    }
+
+    /**
+     * Resets attributes, homes the cursor and erases the receiver's screen.
+     */
+    void writeClearScreen() throws IOException {
+        writeSgr(AttributePalette.DEFAULT_ID);
+        current = AttributePalette.DEFAULT_ID;
+        put('\u001b');
+        put('[');
+        put('H');
+        put('\u001b');
+        put('[');
+        put('2');
+        put('J');
+    }
+
+    /**
+     * Erases from the receiver's cursor to the end of the line with default
+     * attributes (EL).
+     */
+    void writeEraseToEndOfLine() throws IOException {
+        if (current != AttributePalette.DEFAULT_ID) {
+            current = AttributePalette.DEFAULT_ID;
+            writeSgr(current);
+        }
+        put('\u001b');
+        put('[');
+        put('K');
+    }
+
+    /**
+     * Moves the receiver's cursor to a 0-based screen position (CUP).
+     */
+    void writeCursorPosition(int row, int col) throws IOException {
+        put('\u001b');
+        put('[');
+        putNumber(row + 1);
+        putParam(col + 1);
+        put('H');
+    }
+
+    /**
+     * Scrolls the receiver's screen up by n rows (SU).
+     */
+    void writeScrollUp(int n) throws IOException {
+        put('\u001b');
+        put('[');
+        putNumber(n);
+        put('S');
+    }
+
+    // Full attribute state every time, starting with a reset - simpler than diffing
+    private void writeSgr(int id) throws IOException {
+        if (chunkLength + MAX_SGR_LENGTH > CHUNK_SIZE) {
+            flush();
+        }
+        put('\u001b');
+        put('[');
+        put('0');
+        if (AttributePalette.isBold(id)) {
+            putParam(1);
+        }
+        if (AttributePalette.isItalic(id)) {
+            putParam(3);
+        }
+        if (AttributePalette.isUnderline(id)) {
+            putParam(4);
+        }
+        CellAttributes.Color foreground = AttributePalette.foreground(id);
+        if (foreground != CellAttributes.Color.DEFAULT) {
+            putParam(colorParam(foreground, 30, 90));
+        }
+        CellAttributes.Color background = AttributePalette.background(id);
+        if (background != CellAttributes.Color.DEFAULT) {
+            putParam(colorParam(background, 40, 100));
+        }
+        put('m');
+    }
+
+    private static int colorParam(CellAttributes.Color color, int normalBase, int brightBase) {
+        int index = color.ordinal();
+        return index < 8 ? normalBase + index : brightBase + index - 8;
+    }
+
+    private void putParam(int value) throws IOException {
+        put(';');
+        putNumber(value);
+    }
+
+    private void putNumber(int value) throws IOException {
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            put((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    private void put(char ch) throws IOException {
+        if (chunkLength == CHUNK_SIZE) {
+            flush();
+        }
+        chunk[chunkLength++] = ch;
+    }
+
+    void flush() throws IOException {
+        if (chunkLength == 0) {
+            return;
+        }
+        if (out instanceof Writer) {
+            ((Writer) out).write(chunk, 0, chunkLength);
+        } else {
+            out.append(chunkView, 0, chunkLength);
+        }
+        chunkLength = 0;
+    }
+}
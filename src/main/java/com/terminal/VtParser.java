@@ -0,0 +1,547 @@
+package com.terminal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Streaming VT/ANSI parser that turns raw PTY output into {@link TerminalBuffer} calls.
+ *
+ * Input is consumed as bytes. UTF-8 decoding and escape sequence state (CSI, SGR,
+ * OSC) carry over between calls, so chunks can be split anywhere. Printable text is
+ * collected into a reused char array and written to the buffer in runs, so no
+ * intermediate Strings are created.
+ *
+ * Supported: C0 controls (BS, HT, LF/VT/FF, CR), cursor movement (CUU, CUD, CUF,
+ * CUB, CNL, CPL, CHA, VPA, CUP/HVP), erase (ED, EL, ECH), character insert/delete
+ * (ICH, DCH), scroll regions and line operations (DECSTBM, IL, DL, SU, SD, RI),
+ * SGR colors and styles, save/restore cursor (ESC 7 / ESC 8), the alternate screen
+ * (DECSET/DECRST 47, 1047, 1049 - all with 1049 behavior), IND, NEL and RIS.
+ * OSC, DCS and other string sequences are skipped. Anything else is consumed and
+ * ignored.
+ *
+ * Not thread-safe - a parser belongs to the single thread that writes to its buffer.
+ */
+public class VtParser {
+    private static final int GROUND = 0;
+    private static final int ESCAPE = 1;
+    private static final int ESCAPE_INTERMEDIATE = 2;
+    private static final int CSI = 3;
+    private static final int STRING = 4;         // OSC / DCS / SOS / PM / APC payload
+    private static final int STRING_ESCAPE = 5;  // saw ESC inside a string, expecting '\'
+
+    private static final int MAX_PARAMS = 16;
+    private static final int MAX_PARAM_VALUE = 65535;
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private static final CellAttributes.Color[] COLORS = CellAttributes.Color.values();
+
+    private final TerminalBuffer buffer;
+
+    private int state = GROUND;
+
+    // pending printable text, flushed before any control action
+    private final char[] text = new char[4096];
+    private int textLength;
+
+    // UTF-8 decoder state
+    private int utf8Remaining;
+    private int utf8CodePoint;
+    private int utf8Min;
+
+    // CSI state
+    private final int[] params = new int[MAX_PARAMS];
+    private final boolean[] subparam = new boolean[MAX_PARAMS];  // came after ':', belongs to the param before
+    private int paramCount;
+    private boolean paramStarted;
+    private int privateMarker;  // '<', '=', '>' or '?', 0 if none
+    private boolean intermediate;
+
+    // ESC 7 / ESC 8
+    private int savedRow;
+    private int savedCol;
+    private int savedAttributes = AttributePalette.DEFAULT_ID;
+
+    private ByteBuffer readBuffer;
+    private long bytesProcessed;
+
+    public VtParser(TerminalBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Consumes all remaining bytes of the input.
+     * Incomplete sequences at the end are kept and completed by the next call.
+     */
+    public void feed(ByteBuffer input) {
+        int start = input.position();
+        while (input.hasRemaining()) {
+            int b = input.get() & 0xFF;
+            // fast path - plain ASCII text
+            if (state == GROUND && utf8Remaining == 0 && b >= 0x20 && b < 0x7F) {
+                append((char) b);
+            } else {
+                process(b);
+            }
+        }
+        flushText();
+        bytesProcessed += input.position() - start;
+    }
+
+    public void feed(byte[] input, int offset, int length) {
+        feed(ByteBuffer.wrap(input, offset, length));
+    }
+
+    /**
+     * Performs one read from the channel and parses whatever it returned.
+     *
+     * @return the number of bytes read, or -1 at end of stream
+     */
+    public int feed(ReadableByteChannel channel) throws IOException {
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocateDirect(16 * 1024);
+        }
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        if (read > 0) {
+            readBuffer.flip();
+            feed(readBuffer);
+        }
+        return read;
+    }
+
+    /**
+     * Total number of bytes consumed so far - divide by elapsed time for throughput.
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    private void process(int b) {
+        if (utf8Remaining > 0) {
+            if ((b & 0xC0) == 0x80) {
+                utf8CodePoint = (utf8CodePoint << 6) | (b & 0x3F);
+                if (--utf8Remaining == 0) {
+                    printCodePoint(utf8CodePoint);
+                }
+                return;
+            }
+            // truncated sequence - emit a replacement and handle this byte on its own
+            utf8Remaining = 0;
+            append(REPLACEMENT);
+        }
+
+        // CAN and SUB abort any sequence, ESC starts a new one from anywhere
+        if (b == 0x18 || b == 0x1A) {
+            state = GROUND;
+            return;
+        }
+        if (b == 0x1B) {
+            if (state == STRING) {
+                state = STRING_ESCAPE;
+            } else {
+                enterEscape();
+            }
+            return;
+        }
+
+        switch (state) {
+            case GROUND:
+                ground(b);
+                break;
+            case ESCAPE:
+                escape(b);
+                break;
+            case ESCAPE_INTERMEDIATE:
+                if (b >= 0x30 && b <= 0x7E) {
+                    state = GROUND;
+                } else if (b < 0x20) {
+                    control(b);
+                }
+                break;
+            case CSI:
+                csi(b);
+                break;
+            case STRING:
+                if (b == 0x07) {
+                    state = GROUND;  // BEL terminates OSC
+                }
+                break;
+            case STRING_ESCAPE:
+                if (b == '\\') {
+                    state = GROUND;
+                } else {
+                    // not a string terminator - treat as the start of a new escape sequence
+                    enterEscape();
+                    escape(b);
+                }
+                break;
+            default:
+                state = GROUND;
+                break;
+        }
+    }
+
+    private void ground(int b) {
+        if (b < 0x20) {
+            control(b);
+        } else if (b < 0x7F) {
+            append((char) b);
+        } else if (b >= 0xC2 && b <= 0xDF) {
+            startUtf8(b & 0x1F, 1, 0x80);
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            startUtf8(b & 0x0F, 2, 0x800);
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            startUtf8(b & 0x07, 3, 0x10000);
+        } else if (b != 0x7F) {
+            append(REPLACEMENT);  // stray continuation or invalid lead byte
+        }
+    }
+
+    private void startUtf8(int bits, int remaining, int min) {
+        utf8CodePoint = bits;
+        utf8Remaining = remaining;
+        utf8Min = min;
+    }
+
+    private void printCodePoint(int codePoint) {
+        if (codePoint < utf8Min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            append(REPLACEMENT);
+        } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            append((char) codePoint);
+        } else {
+            // the buffer is char based - a supplementary character takes two cells
+            append(Character.highSurrogate(codePoint));
+            append(Character.lowSurrogate(codePoint));
+        }
+    }
+
+    private void control(int b) {
+        flushText();
+        switch (b) {
+            case 0x08:
+                buffer.moveCursorLeft(1);
+                break;
+            case 0x09:
+                buffer.moveCursorRight(8 - buffer.getCursorCol() % 8);
+                break;
+            case 0x0A:
+            case 0x0B:
+            case 0x0C:
+                buffer.lineFeed();
+                break;
+            case 0x0D:
+                buffer.carriageReturn();
+                break;
+            default:
+                break;  // BEL and the rest are ignored
+        }
+    }
+
+    private void enterEscape() {
+        flushText();
+        state = ESCAPE;
+    }
+
+    private void escape(int b) {
+        state = GROUND;
+        switch (b) {
+            case '[':
+                startCsi();
+                break;
+            case ']':
+            case 'P':
+            case 'X':
+            case '^':
+            case '_':
+                state = STRING;
+                break;
+            case '7':
+                savedRow = buffer.getCursorRow();
+                savedCol = buffer.getCursorCol();
+                savedAttributes = buffer.getCurrentAttributeId();
+                break;
+            case '8':
+                buffer.setCursorPosition(savedRow, savedCol);
+                buffer.setCurrentAttributeId(savedAttributes);
+                break;
+            case 'D':
+                buffer.lineFeed();
+                break;
+            case 'E':
+                buffer.carriageReturn();
+                buffer.lineFeed();
+                break;
+            case 'M':
+                buffer.reverseIndex();
+                break;
+            case 'c':
+                buffer.exitAlternateScreen();
+                buffer.clearAll();
+                buffer.setScrollRegion(0, buffer.getHeight() - 1);
+                buffer.setCurrentAttributeId(AttributePalette.DEFAULT_ID);
+                break;
+            default:
+                if (b >= 0x20 && b <= 0x2F) {
+                    state = ESCAPE_INTERMEDIATE;  // e.g. ESC ( B - charset selection
+                } else if (b < 0x20) {
+                    state = ESCAPE;
+                    control(b);
+                }
+                break;
+        }
+    }
+
+    private void startCsi() {
+        state = CSI;
+        paramCount = 0;
+        paramStarted = false;
+        privateMarker = 0;
+        intermediate = false;
+        params[0] = 0;
+        subparam[0] = false;
+    }
+
+    private void csi(int b) {
+        if (b >= '0' && b <= '9') {
+            if (paramCount < MAX_PARAMS) {
+                params[paramCount] = Math.min(MAX_PARAM_VALUE, params[paramCount] * 10 + (b - '0'));
+            }
+            paramStarted = true;
+        } else if (b == ';' || b == ':') {
+            nextParam(b == ':');
+        } else if (b >= 0x3C && b <= 0x3F) {
+            privateMarker = b;
+        } else if (b >= 0x20 && b <= 0x2F) {
+            intermediate = true;
+        } else if (b >= 0x40 && b <= 0x7E) {
+            if (paramStarted) {
+                nextParam(false);
+            }
+            state = GROUND;
+            if (intermediate) {
+                return;
+            }
+            if (privateMarker == 0) {
+                dispatchCsi(b);
+            } else if (privateMarker == '?' && (b == 'h' || b == 'l')) {
+                setPrivateModes(b == 'h');
+            }
+        } else if (b < 0x20) {
+            control(b);  // C0 controls are executed in the middle of a sequence
+        }
+    }
+
+    private void nextParam(boolean sub) {
+        if (paramCount < MAX_PARAMS) {
+            paramCount++;
+            if (paramCount < MAX_PARAMS) {
+                params[paramCount] = 0;
+                subparam[paramCount] = sub;
+            }
+        }
+        paramStarted = true;
+    }
+
+    // Number of ':' subparameters following the param at index
+    private int subparamCount(int index) {
+        int count = 0;
+        while (index + count + 1 < paramCount && subparam[index + count + 1]) {
+            count++;
+        }
+        return count;
+    }
+
+    private int param(int index, int defaultValue) {
+        if (index >= paramCount || params[index] == 0) {
+            return defaultValue;
+        }
+        return params[index];
+    }
+
+    private void dispatchCsi(int command) {
+        switch (command) {
+            case 'A':
+                buffer.moveCursorUp(param(0, 1));
+                break;
+            case 'B':
+                buffer.moveCursorDown(param(0, 1));
+                break;
+            case 'C':
+                buffer.moveCursorRight(param(0, 1));
+                break;
+            case 'D':
+                buffer.moveCursorLeft(param(0, 1));
+                break;
+            case 'E':
+                buffer.moveCursorDown(param(0, 1));
+                buffer.carriageReturn();
+                break;
+            case 'F':
+                buffer.moveCursorUp(param(0, 1));
+                buffer.carriageReturn();
+                break;
+            case 'G':
+                buffer.setCursorPosition(buffer.getCursorRow(), param(0, 1) - 1);
+                break;
+            case 'd':
+                buffer.setCursorPosition(param(0, 1) - 1, buffer.getCursorCol());
+                break;
+            case 'H':
+            case 'f':
+                buffer.setCursorPosition(param(0, 1) - 1, param(1, 1) - 1);
+                break;
+            case 'J':
+                buffer.eraseInDisplay(param(0, 0));
+                break;
+            case 'K':
+                buffer.eraseInLine(param(0, 0));
+                break;
+            case '@':
+                buffer.insertChars(param(0, 1));
+                break;
+            case 'P':
+                buffer.deleteChars(param(0, 1));
+                break;
+            case 'X':
+                buffer.eraseChars(param(0, 1));
+                break;
+            case 'L':
+                buffer.insertLines(param(0, 1));
+                break;
+            case 'M':
+                buffer.deleteLines(param(0, 1));
+                break;
+            case 'S':
+                buffer.scrollUp(param(0, 1));
+                break;
+            case 'T':
+                buffer.scrollDown(param(0, 1));
+                break;
+            case 'r':
+                buffer.setScrollRegion(param(0, 1) - 1, param(1, buffer.getHeight()) - 1);
+                break;
+            case 'm':
+                selectGraphicRendition();
+                break;
+            default:
+                break;
+        }
+    }
+
+    // DECSET / DECRST - only the alternate screen modes are supported
+    private void setPrivateModes(boolean enable) {
+        for (int i = 0; i < paramCount; i++) {
+            switch (params[i]) {
+                case 47:
+                case 1047:
+                case 1049:
+                    if (enable) {
+                        buffer.enterAlternateScreen();
+                    } else {
+                        buffer.exitAlternateScreen();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void selectGraphicRendition() {
+        int id = buffer.getCurrentAttributeId();
+        CellAttributes.Color foreground = AttributePalette.foreground(id);
+        CellAttributes.Color background = AttributePalette.background(id);
+        boolean bold = AttributePalette.isBold(id);
+        boolean italic = AttributePalette.isItalic(id);
+        boolean underline = AttributePalette.isUnderline(id);
+
+        if (paramCount == 0) {
+            buffer.setCurrentAttributeId(AttributePalette.DEFAULT_ID);
+            return;
+        }
+
+        for (int i = 0; i < paramCount; i++) {
+            int p = params[i];
+            int subs = subparamCount(i);
+            if (subs > 0) {
+                // colon forms: 4:n picks an underline style, 38:5:n / 48:5:n a palette color
+                // (38:2:[cs:]r:g:b is true color, which can't be represented). Others are ignored.
+                if (p == 4) {
+                    underline = params[i + 1] != 0;
+                } else if ((p == 38 || p == 48) && subs >= 2 && params[i + 1] == 5 && params[i + 2] < 16) {
+                    if (p == 38) {
+                        foreground = COLORS[params[i + 2]];
+                    } else {
+                        background = COLORS[params[i + 2]];
+                    }
+                }
+                i += subs;
+            } else if (p == 0) {
+                foreground = CellAttributes.Color.DEFAULT;
+                background = CellAttributes.Color.DEFAULT;
+                bold = false;
+                italic = false;
+                underline = false;
+            } else if (p == 1) {
+                bold = true;
+            } else if (p == 3) {
+                italic = true;
+            } else if (p == 4) {
+                underline = true;
+            } else if (p == 22) {
+                bold = false;
+            } else if (p == 23) {
+                italic = false;
+            } else if (p == 24) {
+                underline = false;
+            } else if (p >= 30 && p <= 37) {
+                foreground = COLORS[p - 30];
+            } else if (p == 39) {
+                foreground = CellAttributes.Color.DEFAULT;
+            } else if (p >= 40 && p <= 47) {
+                background = COLORS[p - 40];
+            } else if (p == 49) {
+                background = CellAttributes.Color.DEFAULT;
+            } else if (p >= 90 && p <= 97) {
+                foreground = COLORS[p - 90 + 8];
+            } else if (p >= 100 && p <= 107) {
+                background = COLORS[p - 100 + 8];
+            } else if (p == 38 || p == 48) {
+                // extended colors - only the 16 standard palette entries can be represented
+                CellAttributes.Color color = null;
+                if (i + 2 < paramCount && params[i + 1] == 5) {
+                    if (params[i + 2] < 16) {
+                        color = COLORS[params[i + 2]];
+                    }
+                    i += 2;
+                } else if (i + 1 < paramCount && params[i + 1] == 2) {
+                    i += 4;
+                }
+                if (color != null) {
+                    if (p == 38) {
+                        foreground = color;
+                    } else {
+                        background = color;
+                    }
+                }
+            }
+        }
+        buffer.setCurrentAttributeId(AttributePalette.idOf(foreground, background, bold, italic, underline));
+    }
+
+    private void append(char ch) {
+        if (textLength == text.length) {
+            flushText();
+        }
+        text[textLength++] = ch;
+    }
+
+    private void flushText() {
+        if (textLength > 0) {
+            buffer.writeText(text, 0, textLength);
+            textLength = 0;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.terminal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameEncoderTest {
+    private TerminalBuffer source;
+    private StringBuilder stream;
+    private FrameEncoder encoder;
+    private TerminalBuffer mirror;
+    private VtParser mirrorParser;
+
+    @BeforeEach
+    void setUp() {
+        source = new TerminalBuffer(20, 5, 100);
+        stream = new StringBuilder();
+        encoder = new FrameEncoder(source, stream, 0);
+        mirror = new TerminalBuffer(20, 5, 100);
+        mirrorParser = new VtParser(mirror);
+    }
+
+    // Encodes one frame, applies it to the mirror and returns its size in chars
+    private int frame() throws IOException {
+        stream.setLength(0);
+        encoder.encodeFrame();
+        mirrorParser.feed(ByteBuffer.wrap(stream.toString().getBytes(StandardCharsets.UTF_8)));
+        return stream.length();
+    }
+
+    private void assertMirrored() {
+        assertEquals(source.getScreenContent(), mirror.getScreenContent());
+        for (int row = 0; row < source.getHeight(); row++) {
+            for (int col = 0; col < source.getWidth(); col++) {
+                assertSame(source.getAttributesAt(row, col), mirror.getAttributesAt(row, col), "row " + row + " col " + col);
+            }
+        }
+        assertEquals(source.getCursorRow(), mirror.getCursorRow());
+        assertEquals(source.getCursorCol(), mirror.getCursorCol());
+    }
+
+    @Test
+    void testMirrorsChanges() throws IOException {
+        source.writeText("hello");
+        frame();
+        assertEquals(1, encoder.getKeyframeCount());
+        assertMirrored();
+
+        source.setCurrentAttributes(CellAttributes.Color.RED, CellAttributes.Color.DEFAULT, new CellAttributes.Style(true, false, false));
+        source.writeText(" 世界");
+        source.setCursorPosition(3, 4);
+        source.setCurrentAttributes(CellAttributes.Color.DEFAULT, CellAttributes.Color.BLUE, new CellAttributes.Style());
+        source.writeText("x");
+        frame();
+        assertMirrored();
+
+        // overwriting the blank half of a wide character redraws it
+        source.setCursorPosition(0, 8);
+        source.eraseChars(1);
+        frame();
+        assertMirrored();
+
+        // nothing changed, nothing sent
+        assertEquals(0, frame());
+        assertEquals(3, encoder.getFrameCount());
+    }
+
+    @Test
+    void testWritesOverTheBlankHalfOfWideCharacters() throws IOException {
+        source.writeText("x终 y端");
+        frame();
+        assertMirrored();
+
+        // the right half of 端 is no longer its placeholder
+        source.setCursorPosition(0, 6);
+        source.writeText("a");
+        frame();
+        assertMirrored();
+        assertEquals("x终  y端a", source.getLineAsString(0).trim());
+
+        source.setCursorPosition(0, 2);
+        source.insertText("b");
+        frame();
+        assertMirrored();
+
+        // a keyframe has to position around it as well
+        encoder.requestKeyframe();
+        frame();
+        assertMirrored();
+    }
+
+    @Test
+    void testRandomEditsWithWideCharacters() throws IOException {
+        String[] pieces = {"a", "bc", "终", "端x", " ", "世界"};
+        for (long seed = 0; seed < 200; seed++) {
+            setUp();
+            Random random = new Random(seed);
+            for (int step = 0; step < 40; step++) {
+                source.setCursorPosition(random.nextInt(source.getHeight()), random.nextInt(source.getWidth()));
+                switch (random.nextInt(4)) {
+                    case 0:
+                        source.insertText(pieces[random.nextInt(pieces.length)]);
+                        break;
+                    case 1:
+                        source.eraseChars(1 + random.nextInt(3));
+                        break;
+                    default:
+                        source.writeText(pieces[random.nextInt(pieces.length)]);
+                        break;
+                }
+                if (random.nextInt(3) == 0) {
+                    frame();
+                    assertEquals(source.getScreenContent(), mirror.getScreenContent(), "seed " + seed);
+                }
+            }
+            // a cursor left past the last column can't be sent as a position
+            source.setCursorPosition(0, 0);
+            frame();
+            assertMirrored();
+        }
+    }
+
+    @Test
+    void testScrollIsSentAsScroll() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            source.writeText("line " + i);
+            source.carriageReturn();
+            source.lineFeed();
+        }
+        frame();
+        assertMirrored();
+
+        source.writeText("line 5");
+        source.carriageReturn();
+        source.lineFeed();
+        source.writeText("line 6");
+        int size = frame();
+        assertMirrored();
+        assertTrue(stream.toString().contains("\u001b[1S"));
+        // only the new rows are drawn, not the whole screen
+        assertTrue(size < 40, "frame size " + size);
+    }
+
+    @Test
+    void testDeltaSizeFollowsTheChange() throws IOException {
+        source.writeText("x".repeat(100));
+        frame();
+        source.setCursorPosition(2, 3);
+        source.writeText("y");
+        int size = frame();
+        assertMirrored();
+        assertTrue(size < 20, "frame size " + size);
+    }
+
+    @Test
+    void testKeyframes() throws IOException {
+        FrameEncoder periodic = new FrameEncoder(source, stream, 2);
+        encoder = periodic;
+        for (int i = 0; i < 5; i++) {
+            source.writeText(String.valueOf(i));
+            frame();
+        }
+        // keyframe, delta, delta, keyframe, delta
+        assertEquals(2, periodic.getKeyframeCount());
+        assertMirrored();
+
+        encoder.requestKeyframe();
+        frame();
+        assertTrue(stream.toString().contains("\u001b[2J"));
+        assertEquals(3, periodic.getKeyframeCount());
+
+        // a resize forces one too; the client resizes its terminal to match
+        source.resize(10, 5);
+        mirror.resize(10, 5);
+        frame();
+        assertEquals(4, periodic.getKeyframeCount());
+        assertMirrored();
+    }
+}
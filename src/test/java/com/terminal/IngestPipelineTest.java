@@ -0,0 +1,223 @@
+package com.terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestPipelineTest {
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testManyProducersKeepTheirOrder() throws Exception {
+        int producers = 4;
+        int linesEach = 200;
+        TerminalBuffer buffer = new TerminalBuffer(40, 10, 1000);
+        try (IngestPipeline pipeline = new IngestPipeline(buffer, 4096)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int id = p;
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < linesEach; i++) {
+                            byte[] line = bytes("p" + id + " " + i + "\r\n");
+                            pipeline.submit(line, 0, line.length);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            pipeline.flush();
+
+            assertEquals(producers * linesEach, pipeline.getChunkCount());
+            assertTrue(pipeline.getBatchCount() <= pipeline.getChunkCount());
+
+            TerminalSnapshot snapshot = pipeline.latestSnapshot();
+            int[] next = new int[producers];
+            for (int row = -snapshot.getScrollbackSize(); row < snapshot.getHeight(); row++) {
+                String line = snapshot.getLineAsString(row).trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split(" ");
+                int id = Integer.parseInt(parts[0].substring(1));
+                assertEquals(next[id], Integer.parseInt(parts[1]), line);
+                next[id]++;
+            }
+            for (int p = 0; p < producers; p++) {
+                assertEquals(linesEach, next[p]);
+            }
+        }
+    }
+
+    @Test
+    void testBackpressureAndCoalescing() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        TerminalBuffer buffer = new TerminalBuffer(80, 5, 100);
+        IngestPipeline pipeline = new IngestPipeline(buffer, tasks::add, 100);
+
+        byte[] chunk = bytes("0123456789");
+        for (int i = 0; i < 10; i++) {
+            assertTrue(pipeline.offer(chunk, 0, chunk.length));
+        }
+        assertFalse(pipeline.offer(chunk, 0, 1));
+        // the writer was scheduled once and nothing has been applied yet
+        assertEquals(1, tasks.size());
+        assertEquals("", pipeline.latestSnapshot().getLineAsString(0).trim());
+
+        tasks.remove(0).run();
+        assertEquals(1, pipeline.getBatchCount());
+        assertEquals(10, pipeline.getChunkCount());
+        assertEquals("0123456789".repeat(8), pipeline.latestSnapshot().getLineAsString(0));
+        assertEquals("0123456789".repeat(2), pipeline.latestSnapshot().getLineAsString(1).trim());
+
+        // an oversized chunk still goes through when the queue is empty
+        byte[] large = new byte[300];
+        Arrays.fill(large, (byte) 'x');
+        assertTrue(pipeline.offer(large, 0, large.length));
+        assertFalse(pipeline.offer(chunk, 0, chunk.length));
+        tasks.remove(0).run();
+        assertTrue(pipeline.offer(chunk, 0, chunk.length));
+        tasks.remove(0).run();
+        assertEquals(3, pipeline.getBatchCount());
+        assertThrows(IndexOutOfBoundsException.class, () -> pipeline.offer(chunk, 5, 10));
+    }
+
+    @Test
+    void testTasksRunInOrderWithInput() throws Exception {
+        TerminalBuffer buffer = new TerminalBuffer(20, 4, 100);
+        List<TerminalSnapshot> frames = new CopyOnWriteArrayList<>();
+        IngestPipeline pipeline = new IngestPipeline(buffer, 1024);
+        pipeline.setFrameListener(frames::add);
+
+        byte[] before = bytes("before\r\n");
+        byte[] after = bytes("after");
+        pipeline.submit(before, 0, before.length);
+        pipeline.execute(b -> b.resize(30, 4));
+        pipeline.submit(after, 0, after.length);
+        pipeline.close();
+
+        TerminalSnapshot snapshot = pipeline.latestSnapshot();
+        assertEquals(30, snapshot.getWidth());
+        assertEquals("before", snapshot.getLineAsString(0).trim());
+        assertEquals("after", snapshot.getLineAsString(1).trim());
+        assertFalse(frames.isEmpty());
+        assertSame(snapshot, frames.get(frames.size() - 1));
+        assertEquals(frames.size(), pipeline.getBatchCount());
+
+        assertThrows(IllegalStateException.class, () -> pipeline.submit(after, 0, after.length));
+        assertThrows(IllegalStateException.class, () -> pipeline.execute(b -> { }));
+        assertThrows(IllegalArgumentException.class, () -> new IngestPipeline(buffer, 0));
+    }
+
+    @Test
+    void testFailingTaskDoesNotStopTheWriter() throws Exception {
+        TerminalBuffer buffer = new TerminalBuffer(200, 4, 100);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        // small limit, so later submits depend on the writer draining the queue
+        try (IngestPipeline pipeline = new IngestPipeline(buffer, 16)) {
+            pipeline.setErrorHandler(errors::add);
+            byte[] first = bytes("one ");
+            pipeline.submit(first, 0, first.length);
+            pipeline.execute(b -> {
+                throw new IllegalStateException("boom");
+            });
+            byte[] rest = bytes("two ");
+            pipeline.submit(rest, 0, rest.length);
+            for (int i = 0; i < 20; i++) {
+                pipeline.submit(rest, 0, rest.length);
+            }
+            pipeline.flush();
+
+            assertEquals(1, errors.size());
+            assertEquals("boom", errors.get(0).getMessage());
+            assertTrue(pipeline.latestSnapshot().getLineAsString(0).startsWith("one two two"));
+
+            // a failing frame listener is reported the same way
+            pipeline.setFrameListener(snapshot -> {
+                throw new IllegalStateException("listener");
+            });
+            pipeline.submit(rest, 0, rest.length);
+            pipeline.flush();
+            assertEquals("listener", errors.get(1).getMessage());
+        }
+    }
+
+    @Test
+    void testWaitingOnTheWriterFromTheWriterFails() throws Exception {
+        TerminalBuffer buffer = new TerminalBuffer(20, 4, 100);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        try (IngestPipeline pipeline = new IngestPipeline(buffer, 1024)) {
+            pipeline.setErrorHandler(errors::add);
+            byte[] text = bytes("text");
+            Consumer<Object> flushOnWriter = ignored -> {
+                try {
+                    pipeline.flush();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            };
+            // each of these would wait for the writer it runs on; queueing without waiting is fine
+            pipeline.execute(b -> {
+                pipeline.offer(text, 0, text.length);
+                try {
+                    pipeline.submit(text, 0, text.length);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            pipeline.execute(flushOnWriter::accept);
+            pipeline.execute(b -> pipeline.close());
+            pipeline.flush();
+            assertEquals(3, errors.size());
+            assertEquals("text", pipeline.latestSnapshot().getLineAsString(0).trim());
+
+            pipeline.setFrameListener(flushOnWriter::accept);
+            pipeline.execute(b -> { });
+            pipeline.flush();
+            assertEquals(4, errors.size());
+            for (Throwable error : errors) {
+                assertInstanceOf(IllegalStateException.class, error);
+            }
+        }
+    }
+
+    @Test
+    void testRejectedScheduleIsRetried() throws Exception {
+        TerminalBuffer buffer = new TerminalBuffer(20, 4, 100);
+        List<Runnable> tasks = new ArrayList<>();
+        boolean[] reject = {true};
+        IngestPipeline pipeline = new IngestPipeline(buffer, task -> {
+            if (reject[0]) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        }, 1024);
+
+        byte[] first = bytes("first ");
+        assertThrows(RejectedExecutionException.class, () -> pipeline.offer(first, 0, first.length));
+        reject[0] = false;
+        byte[] second = bytes("second");
+        assertTrue(pipeline.offer(second, 0, second.length));
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        pipeline.flush();
+        assertEquals("first second", pipeline.latestSnapshot().getLineAsString(0).trim());
+    }
+}
@@ -0,0 +1,102 @@
+package com.terminal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionManagerTest {
+
+    private static void fill(TerminalBuffer buffer, int lines) {
+        for (int i = 0; i < lines; i++) {
+            buffer.writeText("log line " + i);
+            buffer.carriageReturn();
+            buffer.lineFeed();
+        }
+    }
+
+    @Test
+    void testTracksSessionsInViewOrder() {
+        try (SessionManager manager = new SessionManager(Long.MAX_VALUE)) {
+            TerminalBuffer a = manager.createSession("a", 80, 24, 100);
+            manager.createSession("b", 80, 24, 100);
+            assertThrows(IllegalArgumentException.class, () -> manager.createSession("a", 80, 24, 100));
+
+            assertSame(a, manager.viewSession("a"));
+            assertEquals(List.of("b", "a"), manager.getSessionIds());
+            assertNull(manager.viewSession("missing"));
+
+            fill(a, 50);
+            assertEquals(manager.getSessionBytes("a") + manager.getSessionBytes("b"), manager.getTotalBytes());
+            assertTrue(manager.getSessionBytes("a") > manager.getSessionBytes("b"));
+            // reading usage doesn't count as viewing
+            assertEquals(List.of("b", "a"), manager.getSessionIds());
+
+            assertTrue(manager.closeSession("b"));
+            assertFalse(manager.closeSession("b"));
+            assertEquals(1, manager.getSessionCount());
+        }
+    }
+
+    @Test
+    void testCompressesLeastRecentlyViewedFirst() {
+        TerminalBuffer probe = new TerminalBuffer(200, 10, 1000);
+        fill(probe, 1000);
+        long sessionBytes = probe.estimatedMemoryBytes();
+
+        // compressing one session is enough to get under this budget
+        long budget = sessionBytes + sessionBytes / 2;
+        try (SessionManager manager = new SessionManager(budget)) {
+            TerminalBuffer old = manager.createSession("old", 200, 10, 1000);
+            TerminalBuffer recent = manager.createSession("recent", 200, 10, 1000);
+            fill(old, 1000);
+            fill(recent, 1000);
+            manager.viewSession("recent");
+            String oldContent = old.getAllContent();
+
+            assertTrue(manager.enforceBudget() <= budget);
+            assertTrue(old.isScrollbackCompression());
+            assertFalse(recent.isScrollbackCompression());
+            assertEquals(oldContent, old.getAllContent());
+            assertEquals(991, old.getScrollbackSize());
+        }
+    }
+
+    @Test
+    void testTrimsWhenCompressionIsNotEnough() {
+        try (SessionManager manager = new SessionManager(0)) {
+            TerminalBuffer buffer = manager.createSession("s", 80, 5, 1000);
+            fill(buffer, 1000);
+            long screenBytes = 5 * Line.estimatedBytes(80);
+
+            assertEquals(screenBytes, manager.enforceBudget());
+            assertEquals(0, buffer.getScrollbackSize());
+            // the screen is left alone and the session keeps working
+            assertEquals("log line 999", buffer.getLineAsString(3).trim());
+            fill(buffer, 10);
+            assertEquals(10, buffer.getScrollbackSize());
+        }
+    }
+
+    @Test
+    void testSpillsBeforeTrimming(@TempDir Path dir) {
+        try (SessionManager manager = new SessionManager(0, dir)) {
+            TerminalBuffer buffer = manager.createSession("s", 80, 5, 1000);
+            fill(buffer, 500);
+            String content = buffer.getAllContent();
+
+            assertEquals(5 * Line.estimatedBytes(80), manager.enforceBudget());
+            assertEquals(496, buffer.getScrollbackSize());
+            assertEquals(content, buffer.getAllContent());
+
+            // new lines enter memory again and older ones keep their place on disk
+            fill(buffer, 10);
+            assertEquals(506, buffer.getScrollbackSize());
+            assertEquals("log line 0", buffer.getLineAsString(-506).trim());
+            assertEquals("log line 5", buffer.getLineAsString(-1).trim());
+        }
+    }
+}
@@ -2,6 +2,28 @@ package com.terminal;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class TerminalBufferTest {
@@ -44,6 +66,30 @@ class TerminalBufferTest {
         assertEquals(1, buffer.getCursorRow());
     }
 
+    @Test
+    void testWriteTextFromReusedBuffers() {
+        char[] chunk = "xxHello, worldxx".toCharArray();
+        buffer.writeText(chunk, 2, 5);
+        StringBuilder sb = new StringBuilder("--, 你好--");
+        buffer.writeText(sb, 2, 5);
+
+        assertTrue(buffer.getLineAsString(0).startsWith("Hello, 你 好 "));
+        assertEquals(12, buffer.getCursorCol());
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.writeText(chunk, 10, 10));
+    }
+
+    @Test
+    void testWriteTextWrapsMixedRuns() {
+        TerminalBuffer narrow = new TerminalBuffer(5, 3, 10);
+        narrow.writeText("abcd你ef");
+
+        // the wide char lands in the last column and its filler wraps away
+        assertEquals("abcd你", narrow.getLineAsString(0));
+        assertEquals("ef   ", narrow.getLineAsString(1));
+        assertEquals(1, narrow.getCursorRow());
+        assertEquals(2, narrow.getCursorCol());
+    }
+
     @Test
     void testCursorMovement() {
         buffer.moveCursorDown(5);
@@ -94,6 +140,177 @@ class TerminalBufferTest {
         assertTrue(buffer.getLineAsString(0).contains("Sunny day!"));
     }
 
+    @Test
+    void testInsertTextWrapsAndShifts() {
+        TerminalBuffer small = new TerminalBuffer(8, 3, 10);
+        small.writeText("abcdef");
+        small.carriageReturn();
+        small.lineFeed();
+        small.writeText("wxyz");
+        small.setCursorPosition(0, 2);
+        small.setCurrentAttributes(CellAttributes.Color.RED, CellAttributes.Color.DEFAULT, new CellAttributes.Style());
+        small.insertText("12345678");
+
+        // the first row is filled, the rest of the text is inserted on the next row
+        assertEquals("ab123456", small.getLineAsString(0));
+        assertEquals("78wxyz  ", small.getLineAsString(1));
+        assertEquals(1, small.getCursorRow());
+        assertEquals(2, small.getCursorCol());
+        assertEquals(CellAttributes.Color.RED, small.getAttributesAt(1, 1).getForeground());
+        assertEquals(CellAttributes.Color.DEFAULT, small.getAttributesAt(1, 2).getForeground());
+    }
+
+    @Test
+    void testInsertDeleteEraseChars() {
+        TerminalBuffer small = new TerminalBuffer(8, 2, 10);
+        small.writeText("abcdefgh");
+        small.setCursorPosition(0, 2);
+
+        small.insertChars(3);
+        assertEquals("ab   cde", small.getLineAsString(0));
+        small.deleteChars(4);
+        assertEquals("abde    ", small.getLineAsString(0));
+        small.eraseChars(1);
+        assertEquals("ab e    ", small.getLineAsString(0));
+        assertEquals(2, small.getCursorCol());
+
+        // counts are clipped to the end of the row
+        small.deleteChars(100);
+        assertEquals("ab      ", small.getLineAsString(0));
+        small.setCursorPosition(0, 0);
+        small.insertChars(100);
+        assertEquals("        ", small.getLineAsString(0));
+    }
+
+    private static TerminalBuffer numberedRows(int height) {
+        TerminalBuffer rows = new TerminalBuffer(5, height, 10);
+        for (int row = 0; row < height; row++) {
+            rows.setCursorPosition(row, 0);
+            rows.writeText("r" + row);
+        }
+        return rows;
+    }
+
+    private static String rowsAsString(TerminalBuffer rows) {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < rows.getHeight(); row++) {
+            sb.append(rows.getLineAsString(row).trim()).append('|');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void testScrollRegion() {
+        TerminalBuffer rows = numberedRows(6);
+        rows.setScrollRegion(1, 4);
+        assertEquals(0, rows.getCursorRow());
+
+        // a line feed at the bottom margin scrolls only the region, and nothing reaches history
+        rows.setCursorPosition(4, 0);
+        rows.lineFeed();
+        assertEquals("r0|r2|r3|r4||r5|", rowsAsString(rows));
+        assertEquals(4, rows.getCursorRow());
+        assertEquals(0, rows.getScrollbackSize());
+
+        rows.scrollDown(2);
+        assertEquals("r0|||r2|r3|r5|", rowsAsString(rows));
+
+        // reverse index at the top margin scrolls the region down
+        rows.setCursorPosition(1, 0);
+        rows.reverseIndex();
+        assertEquals("r0||||r2|r5|", rowsAsString(rows));
+
+        // with the whole screen as region, scrolled lines go to scrollback again
+        rows.setScrollRegion(0, 5);
+        rows.scrollUp(2);
+        assertEquals(2, rows.getScrollbackSize());
+        assertEquals("r0", rows.getLineAsString(-2).trim());
+    }
+
+    @Test
+    void testAlternateScreen() {
+        TerminalBuffer rows = numberedRows(4);
+        rows.setCursorPosition(2, 1);
+        rows.setCurrentAttributes(CellAttributes.Color.RED, CellAttributes.Color.DEFAULT, new CellAttributes.Style(true, false, false));
+        String primary = rowsAsString(rows);
+
+        rows.enterAlternateScreen();
+        assertTrue(rows.isAlternateScreenActive());
+        assertEquals("||||", rowsAsString(rows));
+        assertEquals(0, rows.getCursorRow());
+
+        // scrolling the alternate screen never feeds scrollback
+        for (int i = 0; i < 10; i++) {
+            rows.writeText("alt" + i);
+            rows.carriageReturn();
+            rows.lineFeed();
+        }
+        assertEquals(0, rows.getScrollbackSize());
+        assertEquals("alt7|alt8|alt9||", rowsAsString(rows));
+
+        rows.exitAlternateScreen();
+        assertFalse(rows.isAlternateScreenActive());
+        assertEquals(primary, rowsAsString(rows));
+        assertEquals(2, rows.getCursorRow());
+        assertEquals(1, rows.getCursorCol());
+        assertEquals(CellAttributes.Color.RED, rows.getCurrentAttributes().getForeground());
+
+        // entering again starts from a blank screen
+        rows.enterAlternateScreen();
+        assertEquals("||||", rowsAsString(rows));
+    }
+
+    @Test
+    void testResizeWithAlternateScreen() {
+        TerminalBuffer rows = new TerminalBuffer(6, 3, 10);
+        rows.writeText("abcdefgh");
+        rows.enterAlternateScreen();
+        rows.writeText("123456");
+
+        rows.resize(4, 3);
+        assertTrue(rows.isAlternateScreenActive());
+        assertEquals("1234|||", rowsAsString(rows));
+
+        // the primary screen was re-wrapped and the saved cursor moved with it
+        rows.exitAlternateScreen();
+        assertEquals("abcd|efgh||", rowsAsString(rows));
+        assertEquals(1, rows.getCursorRow());
+        assertEquals(4, rows.getCursorCol());
+    }
+
+    @Test
+    void testInsertAndDeleteLines() {
+        TerminalBuffer rows = numberedRows(6);
+        rows.setScrollRegion(1, 4);
+        rows.setCursorPosition(2, 3);
+
+        rows.insertLines(2);
+        assertEquals("r0|r1|||r2|r5|", rowsAsString(rows));
+        assertEquals(0, rows.getCursorCol());
+
+        rows.deleteLines(1);
+        assertEquals("r0|r1||r2||r5|", rowsAsString(rows));
+
+        // more lines than the region holds just clear it below the cursor
+        rows.deleteLines(100);
+        assertEquals("r0|r1||||r5|", rowsAsString(rows));
+
+        // outside the region nothing happens
+        rows.setCursorPosition(5, 0);
+        rows.insertLines(1);
+        assertEquals("r0|r1||||r5|", rowsAsString(rows));
+        assertEquals(0, rows.getScrollbackSize());
+
+        // deleted rows go back to the pool and are reused for the opened ones
+        long misses = rows.getLinePoolMisses();
+        rows.setCursorPosition(1, 0);
+        for (int i = 0; i < 50; i++) {
+            rows.deleteLines(2);
+            rows.insertLines(2);
+        }
+        assertEquals(misses, rows.getLinePoolMisses());
+    }
+
     @Test
     void testFillLine() {
         buffer.fillLine(0, '&');// Should fill entire line with &
@@ -208,6 +425,526 @@ class TerminalBufferTest {
         assertTrue(smallBuffer.getScrollbackSize() <= 10);
     }
 
+    @Test
+    void testScrollbackEvictsOldestAfterWrapAround() {
+        TerminalBuffer small = new TerminalBuffer(20, 2, 100);
+        for (int i = 0; i < 250; i++) {
+            small.setCursorPosition(1, 0);
+            small.writeText("Line " + i);
+            small.insertLineAtBottom();
+        }
+
+        assertEquals(100, small.getScrollbackSize());
+        // last line written is still on screen, history holds the 100 before it
+        assertEquals("Line 249", small.getLineAsString(0).trim());
+        assertEquals("Line 248", small.getLineAsString(-1).trim());
+        assertEquals("Line 149", small.getLineAsString(-100).trim());
+        assertEquals('L', small.getCharAt(-100, 0));
+        assertEquals("", small.getLineAsString(-101));
+    }
+
+    @Test
+    void testScrollingKeepsRowOrder() {
+        TerminalBuffer noHistory = new TerminalBuffer(10, 3, 0);
+        for (int i = 0; i < 7; i++) {
+            noHistory.setCursorPosition(2, 0);
+            noHistory.writeText("Row " + i);
+            noHistory.insertLineAtBottom();
+        }
+
+        assertEquals(0, noHistory.getScrollbackSize());
+        assertEquals("Row 5", noHistory.getLineAsString(0).trim());
+        assertEquals("Row 6", noHistory.getLineAsString(1).trim());
+        // recycled bottom row comes back blank
+        assertEquals("          ", noHistory.getLineAsString(2));
+    }
+
+    @Test
+    void testSteadyStateScrollingReusesLines() {
+        TerminalBuffer small = new TerminalBuffer(20, 5, 10);
+        // fill the history first - these scrolls have to allocate
+        for (int i = 0; i < 10; i++) {
+            small.insertLineAtBottom();
+        }
+        long missesWhenFull = small.getLinePoolMisses();
+
+        for (int i = 0; i < 100; i++) {
+            small.setCursorPosition(4, 0);
+            small.writeText("x" + i);
+            small.insertLineAtBottom();
+        }
+
+        assertEquals(missesWhenFull, small.getLinePoolMisses());
+        assertEquals(100, small.getLinePoolHits());
+        assertEquals("x99", small.getLineAsString(3).trim());
+        assertEquals("x95", small.getLineAsString(-1).trim());
+        assertTrue(small.getLineAsString(4).trim().isEmpty());
+    }
+
+    @Test
+    void testSaveAndLoadSession(@TempDir Path dir) throws IOException {
+        TerminalBuffer session = new TerminalBuffer(20, 3, 100);
+        CellAttributes.Style bold = new CellAttributes.Style(true, false, false);
+        for (int i = 0; i < 30; i++) {
+            session.setCurrentAttributes(i % 2 == 0 ? CellAttributes.Color.GREEN : CellAttributes.Color.DEFAULT,
+                    CellAttributes.Color.DEFAULT, bold);
+            session.writeText("line " + i + (i == 7 ? " 终端 wraps past the edge" : ""));
+            session.carriageReturn();
+            session.lineFeed();
+        }
+        session.writeText("$ ");
+        session.setCurrentAttributes(CellAttributes.Color.RED, CellAttributes.Color.BLUE, bold);
+
+        Path file = dir.resolve("session.bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            session.saveSession(channel);
+        }
+        // trailing blanks aren't stored, so the file is well below the packed row size
+        assertTrue(Files.size(file) < (session.getScrollbackSize() + 3) * 20L * 6 / 2);
+
+        TerminalBuffer restored = TerminalBuffer.loadSession(file);
+        assertEquals(session.getAllContent(), restored.getAllContent());
+        assertEquals(29, restored.getScrollbackSize());
+        assertEquals(2, restored.getCursorRow());
+        assertEquals(2, restored.getCursorCol());
+        assertEquals(session.getCurrentAttributes(), restored.getCurrentAttributes());
+        for (int row = -29; row < 3; row++) {
+            for (int col = 0; col < 20; col++) {
+                assertSame(session.getAttributesAt(row, col), restored.getAttributesAt(row, col));
+            }
+        }
+
+        // soft wraps survive, so both reflow the same way
+        session.resize(30, 3);
+        restored.resize(30, 3);
+        assertEquals(session.getAllContent(), restored.getAllContent());
+
+        // and the restored buffer keeps working
+        restored.writeText("ls");
+        assertEquals("$ ls", restored.getLineAsString(2).trim());
+    }
+
+    @Test
+    void testLoadSessionRejectsOtherFiles(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("notes.txt");
+        Files.writeString(file, "line 0\nline 1\n");
+        assertThrows(IOException.class, () -> TerminalBuffer.loadSession(file));
+
+        // a truncated session is detected rather than read past its end
+        TerminalBuffer session = new TerminalBuffer(10, 2, 10);
+        session.writeText("hello");
+        Path saved = dir.resolve("session.bin");
+        try (FileChannel channel = FileChannel.open(saved, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            session.saveSession(channel);
+        }
+        byte[] bytes = Files.readAllBytes(saved);
+        Files.write(saved, Arrays.copyOf(bytes, bytes.length - 4));
+        assertThrows(IOException.class, () -> TerminalBuffer.loadSession(saved));
+    }
+
+    @Test
+    void testLoadSessionChecksAttributeIds(@TempDir Path dir) throws IOException {
+        TerminalBuffer session = new TerminalBuffer(10, 2, 10);
+        session.writeText("hello");
+        session.carriageReturn();
+        session.lineFeed();
+        session.writeText("world");
+        session.carriageReturn();
+        session.lineFeed();
+        Path saved = dir.resolve("session.bin");
+        try (FileChannel channel = FileChannel.open(saved, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            session.saveSession(channel);
+        }
+        byte[] bytes = Files.readAllBytes(saved);
+        // 13-int header, then "hello" in scrollback and "world" on screen: [width][length][chars][ids]
+        int history = 13 * 4;
+        int screen = history + 8 + 5 * 6;
+
+        // scrollback is read lazily, so a bad id there reads back as the default
+        byte[] badHistory = bytes.clone();
+        ByteBuffer.wrap(badHistory).putInt(history + 8 + 5 * 2, Integer.MAX_VALUE);
+        Files.write(saved, badHistory);
+        TerminalBuffer restored = TerminalBuffer.loadSession(saved);
+        assertEquals("hello", restored.getLineAsString(-1).trim());
+        assertSame(CellAttributes.forId(AttributePalette.DEFAULT_ID), restored.getAttributesAt(-1, 0));
+        char[] chars = new char[10];
+        int[] ids = new int[10];
+        restored.copyRow(-1, chars, ids);
+        assertEquals(AttributePalette.DEFAULT_ID, ids[0]);
+
+        // screen rows are copied up front, so the file is rejected
+        byte[] badScreen = bytes.clone();
+        ByteBuffer.wrap(badScreen).putInt(screen + 8 + 5 * 2 + 4, -1);
+        Files.write(saved, badScreen);
+        assertThrows(IOException.class, () -> TerminalBuffer.loadSession(saved));
+    }
+
+    @Test
+    void testLoadSessionIndexesOnFirstSearch(@TempDir Path dir) throws IOException {
+        TerminalBuffer session = new TerminalBuffer(20, 2, 100);
+        session.setSearchIndexEnabled(true);
+        for (int i = 0; i < 50; i++) {
+            session.writeText("entry " + i);
+            session.carriageReturn();
+            session.lineFeed();
+        }
+        Path saved = dir.resolve("session.bin");
+        try (FileChannel channel = FileChannel.open(saved, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            session.saveSession(channel);
+        }
+
+        TerminalBuffer restored = TerminalBuffer.loadSession(saved);
+        assertTrue(restored.isSearchIndexEnabled());
+        // lines scrolled in before the first search are picked up when the index is built
+        restored.writeText("entry 50");
+        restored.carriageReturn();
+        restored.lineFeed();
+        restored.lineFeed();
+        assertEquals(51, restored.getScrollbackSize());
+        assertEquals(-44, restored.find("entry 7", false, -51, 0, true).getRow());
+        assertEquals(-1, restored.find("entry 50", false, -51, 0, true).getRow());
+
+        // and lines after it are indexed as they arrive
+        restored.writeText("entry 51");
+        restored.carriageReturn();
+        restored.lineFeed();
+        restored.lineFeed();
+        assertEquals(-1, restored.find("entry 51", false, -52, 0, true).getRow());
+    }
+
+    @Test
+    void testMetrics() throws IOException {
+        TerminalBuffer measured = new TerminalBuffer(10, 3, 5);
+        assertNull(measured.getMetrics());
+        measured.setMetricsEnabled(true);
+        BufferMetrics metrics = measured.getMetrics();
+
+        for (int i = 0; i < 10; i++) {
+            measured.writeText("0123456789abc");  // wraps once
+            measured.carriageReturn();
+            measured.lineFeed();
+        }
+        measured.insertText("xy");
+        assertEquals(130, metrics.getCharactersWritten());
+        assertEquals(2, metrics.getCharactersInserted());
+        assertEquals(10, metrics.getWraps());
+        assertEquals(18, metrics.getScrolls());
+        assertEquals(13, metrics.getScrollbackEvictions());
+        assertEquals(5, metrics.getScrollbackDepth());
+        assertTrue(metrics.getEstimatedBytes() >= 8 * Line.estimatedBytes(10));
+
+        measured.resize(12, 3);
+        measured.getAllContent();
+        measured.exportContent(new StringBuilder());
+        assertEquals(10, metrics.getWriteLatency().getCount());
+        assertEquals(1, metrics.getResizeLatency().getCount());
+        assertEquals(2, metrics.getExportLatency().getCount());
+        LatencyHistogram resize = metrics.getResizeLatency();
+        assertTrue(resize.getMaxNanos() > 0);
+        assertTrue(resize.getPercentileNanos(50) <= resize.getMaxNanos());
+
+        // turning metrics off drops them; on again starts from zero
+        measured.setMetricsEnabled(false);
+        assertNull(measured.getMetrics());
+        measured.writeText("abc");
+        measured.setMetricsEnabled(true);
+        assertEquals(0, measured.getMetrics().getCharactersWritten());
+    }
+
+    @Test
+    void testEstimatedMemoryBytes() {
+        TerminalBuffer measured = new TerminalBuffer(80, 5, 1000);
+        long screenBytes = 5 * Line.estimatedBytes(80);
+        assertEquals(screenBytes, measured.estimatedMemoryBytes());
+
+        for (int i = 0; i < 200; i++) {
+            measured.writeText("line " + i);
+            measured.carriageReturn();
+            measured.lineFeed();
+        }
+        assertEquals(screenBytes + 196 * Line.estimatedBytes(80), measured.estimatedMemoryBytes());
+
+        // history is rebuilt at the new width on resize
+        measured.resize(40, 5);
+        assertEquals(5 * Line.estimatedBytes(40) + 196 * Line.estimatedBytes(40), measured.estimatedMemoryBytes());
+
+        measured.setScrollbackCompression(true);
+        measured.insertLineAtBottom();
+        assertTrue(measured.estimatedMemoryBytes() < 5 * Line.estimatedBytes(40) + 197 * Line.estimatedBytes(40));
+
+        measured.clearAll();
+        assertEquals(5 * Line.estimatedBytes(40), measured.estimatedMemoryBytes());
+    }
+
+    @Test
+    void testScrollbackByteLimit() {
+        TerminalBuffer capped = new TerminalBuffer(80, 5, Integer.MAX_VALUE);
+        long lineBytes = Line.estimatedBytes(80);
+        capped.setMaxScrollbackBytes(100 * lineBytes);
+        for (int i = 0; i < 1000; i++) {
+            capped.writeText("line " + i);
+            capped.carriageReturn();
+            capped.lineFeed();
+        }
+        assertEquals(100, capped.getScrollbackSize());
+        assertEquals("line 896", capped.getLineAsString(-100).trim());
+        assertEquals(5 * lineBytes + 100 * lineBytes, capped.estimatedMemoryBytes());
+
+        // wider lines cost more, so fewer of them fit
+        capped.resize(160, 5);
+        capped.insertLineAtBottom();
+        assertTrue(capped.estimatedMemoryBytes() - 5 * Line.estimatedBytes(160) <= 100 * lineBytes);
+        assertTrue(capped.getScrollbackSize() < 100);
+
+        // lowering the limit evicts right away, and the line limit still applies
+        capped.setMaxScrollbackBytes(0);
+        assertEquals(0, capped.getScrollbackSize());
+        assertThrows(IllegalArgumentException.class, () -> capped.setMaxScrollbackBytes(-1));
+    }
+
+    @Test
+    void testLatencyHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(99));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(1_000_000);
+        assertEquals(100, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        // within a factor of two of the real value
+        assertTrue(histogram.getPercentileNanos(50) >= 1000 && histogram.getPercentileNanos(50) < 2000);
+        assertEquals(1_000_000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    void testJfrEvents(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("buffer.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.terminal.Resize").withThreshold(Duration.ZERO);
+            recording.enable("com.terminal.Export").withThreshold(Duration.ZERO);
+            recording.start();
+            buffer.writeText("hello");
+            buffer.resize(40, 10);
+            buffer.exportContent(new StringBuilder(), 0, 10, true);
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        RecordedEvent resize = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.terminal.Resize")).findFirst().orElseThrow();
+        assertEquals(80, resize.getInt("oldWidth"));
+        assertEquals(40, resize.getInt("newWidth"));
+        RecordedEvent export = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.terminal.Export")).findFirst().orElseThrow();
+        assertEquals(10, export.getInt("rows"));
+        assertTrue(export.getBoolean("withAttributes"));
+    }
+
+    @Test
+    void testDiskBackedScrollback(@TempDir Path dir) throws IOException {
+        try (TerminalBuffer disk = new TerminalBuffer(20, 2, 6000, 10, dir)) {
+            for (int i = 0; i < 20000; i++) {
+                disk.setCursorPosition(1, 0);
+                if (i % 2 == 0) {
+                    disk.setCurrentAttributes(CellAttributes.Color.RED, CellAttributes.Color.DEFAULT,
+                            new CellAttributes.Style());
+                } else {
+                    disk.setCurrentAttributes(CellAttributes.Color.DEFAULT, CellAttributes.Color.DEFAULT,
+                            new CellAttributes.Style());
+                }
+                disk.writeText("line " + i);
+                disk.insertLineAtBottom();
+            }
+
+            assertEquals(6000, disk.getScrollbackSize());
+            // newest lines come from the heap, the rest from disk
+            assertEquals("line 19998", disk.getLineAsString(-1).trim());
+            assertEquals("line 13999", disk.getLineAsString(-6000).trim());
+            assertEquals(20, disk.getLineAsString(-6000).length());
+            assertEquals('3', disk.getCharAt(-6000, 6));
+            assertEquals(' ', disk.getCharAt(-6000, 15));
+            assertEquals(CellAttributes.Color.RED, disk.getAttributesAt(-5999, 0).getForeground());
+            assertEquals(CellAttributes.Color.DEFAULT, disk.getAttributesAt(-6000, 0).getForeground());
+
+            // old history is dropped a segment at a time, not kept around
+            try (Stream<Path> files = Files.list(dir)) {
+                assertTrue(files.count() <= 3);
+            }
+
+            TerminalSnapshot snapshot = disk.snapshot();
+            disk.clearAll();
+            assertEquals(0, disk.getScrollbackSize());
+            assertEquals("line 13999", snapshot.getLineAsString(-6000).trim());
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testExportContent() throws IOException {
+        TerminalBuffer small = new TerminalBuffer(12, 3, 100);
+        for (int i = 0; i < 5000; i++) {
+            small.writeText("row " + i);
+            small.carriageReturn();
+            small.lineFeed();
+        }
+        small.writeText("终端");
+
+        // streaming export matches the String version, in chunks
+        StringWriter writer = new StringWriter();
+        small.exportContent(writer);
+        assertEquals(small.getAllContent(), writer.toString());
+
+        StringBuilder range = new StringBuilder();
+        small.exportContent(range, -2, 1, false);
+        assertEquals("row 4996    \nrow 4997    \nrow 4998    ", range.toString());
+
+        // ranges are clipped to rows that exist
+        StringBuilder all = new StringBuilder();
+        small.exportContent(all, -1000, 1000, false);
+        assertEquals(small.getAllContent(), all.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        small.exportContent(Channels.newChannel(bytes), 2, 3, false);
+        assertEquals("终 端 " + " ".repeat(8), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testExportWithAttributesRoundTrips() throws IOException {
+        buffer.setCurrentAttributes(CellAttributes.Color.BRIGHT_RED, CellAttributes.Color.BLUE,
+                new CellAttributes.Style(true, false, true));
+        buffer.writeText("err");
+        buffer.setCurrentAttributes(CellAttributes.Color.DEFAULT, CellAttributes.Color.DEFAULT,
+                new CellAttributes.Style());
+        buffer.writeText(" ok");
+
+        StringBuilder out = new StringBuilder();
+        buffer.exportContent(out, 0, 1, true);
+        assertTrue(out.toString().startsWith("\u001b[0;1;4;91;44merr\u001b[0m ok"));
+
+        // feeding the export back through the parser reproduces the row
+        TerminalBuffer copy = new TerminalBuffer(80, 24, 100);
+        new VtParser(copy).feed(ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(buffer.getLineAsString(0), copy.getLineAsString(0));
+        for (int col = 0; col < 6; col++) {
+            assertEquals(buffer.getAttributesAt(0, col), copy.getAttributesAt(0, col));
+        }
+    }
+
+    @Test
+    void testSearch() {
+        TerminalBuffer log = new TerminalBuffer(40, 4, 10000);
+        log.setSearchIndexEnabled(true);
+        for (int i = 0; i < 30000; i++) {
+            log.writeText(i % 1000 == 7 ? "request " + i + " FAILED after retry" : "request " + i + " ok");
+            log.carriageReturn();
+            log.lineFeed();
+        }
+        // history now holds requests 19997..29996, the screen 29997..29999
+        assertEquals(10000, log.getScrollbackSize());
+
+        SearchResult last = log.find("failed", true, 4, 0, false);
+        assertEquals(-10000 + (29007 - 19997), last.getRow());
+        assertEquals(14, last.getColumn());
+        assertEquals(20, last.getEndColumn());
+
+        // find previous walks back through history, find next comes back again
+        SearchResult previous = log.find("failed", true, last.getRow(), last.getColumn(), false);
+        assertEquals(last.getRow() - 1000, previous.getRow());
+        SearchResult next = log.find("failed", true, previous.getRow(), previous.getColumn() + 1, true);
+        assertEquals(last.getRow(), next.getRow());
+
+        // lines evicted from history are no longer found
+        assertNull(log.find("request 19996 ", false, -10000, 0, true));
+        assertEquals(-10000, log.find("request 19997 ", false, -10000, 0, true).getRow());
+
+        // case-sensitive and screen matches, with and without the index
+        assertNull(log.find("failed", false, -10000, 0, true));
+        assertEquals(2, log.find("request 29999", false, 0, 0, true).getRow());
+        log.setSearchIndexEnabled(false);
+        assertEquals(last.getRow(), log.find("failed", true, 4, 0, false).getRow());
+        log.setSearchIndexEnabled(true);
+        assertEquals(last.getRow(), log.find("failed", true, 4, 0, false).getRow());
+
+        SearchResult regex = log.find(Pattern.compile("request 2\\d+7 FAILED"), -10000, 0, true);
+        assertEquals(-10000 + (20007 - 19997), regex.getRow());
+        assertEquals(0, regex.getColumn());
+
+        log.clearAll();
+        assertNull(log.find("request", false, -10000, 0, true));
+    }
+
+    @Test
+    void testSearchWideCharacters() {
+        buffer.writeText("打开终端 now");
+        SearchResult hit = buffer.find("终端", false, 0, 0, true);
+        assertEquals(0, hit.getRow());
+        assertEquals(4, hit.getColumn());
+        assertEquals(8, hit.getEndColumn());
+        assertEquals(9, buffer.find("now", false, 0, 0, true).getColumn());
+    }
+
+    @Test
+    void testCompressedScrollback() {
+        // a wide CI log viewer: short lines, lots of trailing blank space
+        TerminalBuffer compressed = new TerminalBuffer(200, 5, 1000);
+        compressed.setScrollbackCompression(true);
+        assertEquals(1.0, compressed.getScrollbackCompressionRatio());
+
+        CellAttributes.Style plain = new CellAttributes.Style();
+        for (int i = 0; i < 2000; i++) {
+            compressed.setCursorPosition(4, 0);
+            compressed.setCurrentAttributes(CellAttributes.Color.GREEN, CellAttributes.Color.DEFAULT, plain);
+            compressed.writeText("[INFO] ");
+            compressed.setCurrentAttributes(CellAttributes.Color.DEFAULT, CellAttributes.Color.DEFAULT, plain);
+            compressed.writeText("Compiling module " + i + " to target/classes");
+            compressed.insertLineAtBottom();
+        }
+
+        assertEquals(1000, compressed.getScrollbackSize());
+        assertEquals("[INFO] Compiling module 1995 to target/classes", compressed.getLineAsString(-1).trim());
+        assertEquals(200, compressed.getLineAsString(-1).length());
+        assertEquals(CellAttributes.Color.GREEN, compressed.getAttributesAt(-1, 0).getForeground());
+        assertEquals(CellAttributes.Color.DEFAULT, compressed.getAttributesAt(-1, 7).getForeground());
+        assertEquals(' ', compressed.getCharAt(-1, 199));
+        assertTrue(compressed.getScrollbackCompressionRatio() >= 10.0,
+                "ratio was " + compressed.getScrollbackCompressionRatio());
+
+        // screen rows are recycled as soon as they are encoded
+        assertEquals(0, compressed.getLinePoolMisses());
+
+        // whole encoded rows decode to the same cells as single-cell reads
+        char[] rowChars = new char[200];
+        int[] rowAttrs = new int[200];
+        for (int row = -3; row < 0; row++) {
+            compressed.copyRow(row, rowChars, rowAttrs);
+            for (int col = 0; col < 200; col++) {
+                assertEquals(compressed.getCharAt(row, col), rowChars[col]);
+                assertSame(compressed.getAttributesAt(row, col), CellAttributes.forId(rowAttrs[col]));
+            }
+        }
+
+        // non-Latin-1 text survives the encoding
+        compressed.setCursorPosition(0, 0);
+        compressed.eraseInLine(2);
+        compressed.writeText("终端 ok");
+        compressed.insertLineAtBottom();
+        assertEquals("终 端  ok", compressed.getLineAsString(-1).trim());
+
+        // encoded lines are re-wrapped on resize like any other
+        compressed.resize(10, 5);
+        SearchResult hit = compressed.find("[INFO] Com", false, 0, 0, false);
+        assertEquals("[INFO] Com", compressed.getLineAsString(hit.getRow()));
+        assertEquals("piling mod", compressed.getLineAsString(hit.getRow() + 1));
+        assertEquals(CellAttributes.Color.GREEN, compressed.getAttributesAt(hit.getRow(), 0).getForeground());
+
+        compressed.clearAll();
+        assertEquals(1.0, compressed.getScrollbackCompressionRatio());
+    }
+
     @Test
     void testGetCharAt() {
         buffer.writeText("Test");
@@ -277,6 +1014,211 @@ class TerminalBufferTest {
         assertTrue(attrs.getStyle().isBold());
     }
 
+    @Test
+    void testAttributesPreservedPerCell() {
+        buffer.setCurrentAttributes(
+                CellAttributes.Color.BRIGHT_CYAN,
+                CellAttributes.Color.DEFAULT,
+                new CellAttributes.Style(false, true, true)
+        );
+        buffer.writeText("A");
+        buffer.setCurrentAttributes(
+                CellAttributes.Color.DEFAULT,
+                CellAttributes.Color.BRIGHT_WHITE,
+                new CellAttributes.Style()
+        );
+        buffer.writeText("B");
+
+        CellAttributes first = buffer.getAttributesAt(0, 0);
+        assertEquals(CellAttributes.Color.BRIGHT_CYAN, first.getForeground());
+        assertEquals(CellAttributes.Color.DEFAULT, first.getBackground());
+        assertFalse(first.getStyle().isBold());
+        assertTrue(first.getStyle().isItalic());
+        assertTrue(first.getStyle().isUnderline());
+
+        CellAttributes second = buffer.getAttributesAt(0, 1);
+        assertEquals(CellAttributes.Color.DEFAULT, second.getForeground());
+        assertEquals(CellAttributes.Color.BRIGHT_WHITE, second.getBackground());
+
+        // untouched cells keep default attributes
+        CellAttributes blank = buffer.getAttributesAt(0, 2);
+        assertEquals(CellAttributes.Color.DEFAULT, blank.getForeground());
+        assertEquals(CellAttributes.Color.DEFAULT, blank.getBackground());
+    }
+
+    @Test
+    void testAttributesAreInterned() {
+        buffer.setCurrentAttributes(
+                CellAttributes.Color.GREEN,
+                CellAttributes.Color.DEFAULT,
+                new CellAttributes.Style(true, false, false)
+        );
+        buffer.writeText("ok");
+
+        // identical attributes resolve to the same shared instance
+        CellAttributes first = buffer.getAttributesAt(0, 0);
+        assertSame(first, buffer.getAttributesAt(0, 1));
+        assertEquals(buffer.getCurrentAttributes(), first);
+
+        // shared attributes can't be modified, copies can
+        assertThrows(UnsupportedOperationException.class,
+                () -> first.setForeground(CellAttributes.Color.RED));
+        assertThrows(UnsupportedOperationException.class,
+                () -> first.getStyle().setBold(false));
+        CellAttributes copy = first.copy();
+        copy.setForeground(CellAttributes.Color.RED);
+        assertEquals(CellAttributes.Color.GREEN, buffer.getAttributesAt(0, 0).getForeground());
+    }
+
+    @Test
+    void testDamageSingleCell() {
+        assertTrue(buffer.collectDamage().isFullRepaint());  // never drawn yet
+        assertTrue(buffer.collectDamage().isEmpty());
+
+        buffer.setCursorPosition(5, 10);
+        buffer.writeText("x");
+
+        DamageReport damage = buffer.collectDamage();
+        assertFalse(damage.isFullRepaint());
+        assertEquals(0, damage.getScrollDelta());
+        assertEquals(1, damage.getSpanCount());
+        assertEquals(5, damage.getRow(0));
+        assertEquals(10, damage.getStartCol(0));
+        assertEquals(11, damage.getEndCol(0));
+
+        assertTrue(buffer.collectDamage().isEmpty());
+    }
+
+    @Test
+    void testDamageScrollHint() {
+        buffer.collectDamage();
+        buffer.setCursorPosition(23, 0);
+        buffer.writeText("abc");
+        buffer.insertLineAtBottom();
+        buffer.insertLineAtBottom();
+
+        DamageReport damage = buffer.collectDamage();
+        assertEquals(2, damage.getScrollDelta());
+        // the write moved up with the content, plus the two rows opened at the bottom
+        assertEquals(3, damage.getSpanCount());
+        assertEquals(21, damage.getRow(0));
+        assertEquals(0, damage.getStartCol(0));
+        assertEquals(3, damage.getEndCol(0));
+        assertEquals(22, damage.getRow(1));
+        assertEquals(23, damage.getRow(2));
+        assertEquals(80, damage.getEndCol(2));
+
+        buffer.resize(40, 10);
+        assertTrue(buffer.collectDamage().isFullRepaint());
+    }
+
+    @Test
+    void testSnapshotIsUnaffectedByLaterWrites() {
+        TerminalBuffer small = new TerminalBuffer(10, 3, 2);
+        small.writeText("one");
+        small.lineFeed();
+        small.carriageReturn();
+        small.writeText("two");
+        small.insertLineAtBottom();  // "one" goes to scrollback
+
+        TerminalSnapshot snapshot = small.snapshot();
+
+        small.setCursorPosition(0, 0);
+        small.writeText("TWO");
+        for (int i = 0; i < 5; i++) {
+            small.insertLineAtBottom();  // evicts "one" from the live history
+        }
+        small.resize(4, 2);
+        small.clearAll();
+
+        assertEquals(10, snapshot.getWidth());
+        assertEquals(3, snapshot.getHeight());
+        assertEquals(1, snapshot.getScrollbackSize());
+        assertEquals("one", snapshot.getLineAsString(-1).trim());
+        assertEquals("two", snapshot.getLineAsString(0).trim());
+        assertEquals('t', snapshot.getCharAt(0, 0));
+        assertEquals("two       \n          \n          ", snapshot.getScreenContent());
+        assertEquals(1, snapshot.getCursorRow());
+        assertEquals(3, snapshot.getCursorCol());
+    }
+
+    @Test
+    void testSnapshotSharesUnchangedRows() {
+        buffer.writeText("shared");
+        TerminalSnapshot first = buffer.snapshot();
+        buffer.setCursorPosition(5, 0);
+        buffer.writeText("changed");
+        TerminalSnapshot second = buffer.snapshot();
+
+        assertEquals("shared", second.getLineAsString(0).trim());
+        assertEquals("changed", second.getLineAsString(5).trim());
+        assertTrue(first.getLineAsString(5).trim().isEmpty());
+    }
+
+    // Every cell of a buffer's rows as "row,col,char,id", read one cell at a time
+    private static String cellsByLookup(TerminalBuffer source, int fromRow, int toRow) {
+        StringBuilder sb = new StringBuilder();
+        for (int row = Math.max(fromRow, -source.getScrollbackSize()); row < Math.min(toRow, source.getHeight()); row++) {
+            for (int col = 0; col < source.getWidth(); col++) {
+                sb.append(row).append(',').append(col).append(',').append(source.getCharAt(row, col)).append(',')
+                        .append(AttributePalette.idOf(source.getAttributesAt(row, col))).append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void testCopyRowAndForEachCell(@TempDir Path dir) {
+        try (TerminalBuffer cells = new TerminalBuffer(10, 3, 100, 4, dir)) {
+            for (int i = 0; i < 12; i++) {
+                cells.setCurrentAttributes(CellAttributes.Color.RED, CellAttributes.Color.DEFAULT,
+                        new CellAttributes.Style(i % 2 == 0, false, false));
+                cells.writeText("r" + i);
+                cells.setCurrentAttributes(CellAttributes.Color.DEFAULT, CellAttributes.Color.BLUE, new CellAttributes.Style());
+                cells.writeText(" 你x");
+                cells.carriageReturn();
+                cells.lineFeed();
+            }
+            cells.compactScrollback();
+            String expected = cellsByLookup(cells, -100, 100);
+
+            // history now spans the disk tier, compact lines and the screen
+            StringBuilder visited = new StringBuilder();
+            CellVisitor collect = (row, col, ch, attributeId) ->
+                    visited.append(row).append(',').append(col).append(',').append(ch).append(',').append(attributeId).append(';');
+            cells.forEachCell(-100, 100, collect);
+            assertEquals(expected, visited.toString());
+
+            visited.setLength(0);
+            cells.snapshot().forEachCell(-100, 100, collect);
+            assertEquals(expected, visited.toString());
+
+            visited.setLength(0);
+            cells.forEachCell(-2, 1, collect);
+            assertEquals(cellsByLookup(cells, -2, 1), visited.toString());
+
+            char[] chars = new char[12];
+            int[] ids = new int[12];
+            for (int row = -cells.getScrollbackSize(); row < cells.getHeight(); row++) {
+                cells.copyRow(row, chars, ids);
+                assertEquals(cells.getLineAsString(row), new String(chars, 0, 10));
+                assertSame(cells.getAttributesAt(row, 0), CellAttributes.forId(ids[0]));
+                assertSame(cells.getAttributesAt(row, 4), CellAttributes.forId(ids[4]));
+            }
+            cells.snapshot().copyRow(-1, chars, ids);
+            assertEquals(cells.getLineAsString(-1), new String(chars, 0, 10));
+
+            // rows that don't exist are default blanks
+            cells.copyRow(-1000, chars, ids);
+            assertEquals(" ".repeat(10), new String(chars, 0, 10));
+            assertEquals(0, ids[0]);
+
+            assertThrows(IllegalArgumentException.class, () -> cells.copyRow(0, new char[5], new int[10]));
+            assertThrows(IllegalArgumentException.class, () -> CellAttributes.forId(CellAttributes.idCount()));
+            assertTrue(CellAttributes.forId(0).equals(new CellAttributes()));
+        }
+    }
+
     @Test
     void testClearAll() {
         for (int i = 0; i < 30; i++) {
@@ -297,6 +1239,121 @@ class TerminalBufferTest {
         assertEquals(12, buffer.getHeight());
     }
 
+    @Test
+    void testResizeShrinkKeepsRowsBelowTheCursor() {
+        TerminalBuffer tall = new TerminalBuffer(10, 5, 100);
+        for (int row = 0; row < 5; row++) {
+            tall.setCursorPosition(row, 0);
+            tall.writeText("row" + row);
+        }
+        tall.setCursorPosition(1, 2);
+
+        tall.resize(10, 3);
+        assertEquals(2, tall.getScrollbackSize());
+        assertEquals("row0\nrow1\nrow2\nrow3\nrow4", tall.getAllContent().replaceAll(" +\n", "\n").trim());
+        assertEquals("row2", tall.getLineAsString(0).trim());
+        assertEquals("row4", tall.getLineAsString(2).trim());
+        // the cursor's row went into history, so the cursor stays on the top row
+        assertEquals(0, tall.getCursorRow());
+        assertEquals(2, tall.getCursorCol());
+
+        // same when the width changes as well
+        TerminalBuffer reflowed = new TerminalBuffer(10, 5, 100);
+        for (int row = 0; row < 5; row++) {
+            reflowed.setCursorPosition(row, 0);
+            reflowed.writeText("row" + row);
+        }
+        reflowed.setCursorPosition(0, 0);
+        reflowed.resize(8, 2);
+        assertEquals("row3", reflowed.getLineAsString(0).trim());
+        assertEquals("row4", reflowed.getLineAsString(1).trim());
+        assertEquals("row0", reflowed.getLineAsString(-3).trim());
+    }
+
+    @Test
+    void testResizeReflowsWrappedText() {
+        TerminalBuffer small = new TerminalBuffer(10, 4, 100);
+        small.writeText("The quick brown fox");
+        small.carriageReturn();
+        small.lineFeed();
+        small.writeText("end");
+        assertEquals("The quick ", small.getLineAsString(0));
+        assertEquals("brown fox ", small.getLineAsString(1));
+
+        small.resize(20, 4);
+        assertEquals("The quick brown fox ", small.getLineAsString(0));
+        assertEquals("end", small.getLineAsString(1).trim());
+        assertEquals(1, small.getCursorRow());
+        assertEquals(3, small.getCursorCol());
+
+        // narrowing pushes the top of the text into scrollback, nothing is lost
+        small.resize(6, 3);
+        assertEquals("The qu", small.getLineAsString(-2));
+        assertEquals("ick br", small.getLineAsString(-1));
+        assertEquals("own fo", small.getLineAsString(0));
+        assertEquals("x     ", small.getLineAsString(1));
+        assertEquals("end   ", small.getLineAsString(2));
+        assertEquals(2, small.getCursorRow());
+
+        // widening again joins the rows back up, pulling the wrapped part out of scrollback
+        small.resize(20, 4);
+        assertEquals(0, small.getScrollbackSize());
+        assertEquals("The quick brown fox ", small.getLineAsString(0));
+        assertEquals("end", small.getLineAsString(1).trim());
+        assertEquals(1, small.getCursorRow());
+        assertEquals(3, small.getCursorCol());
+
+        // writing continues where the cursor ended up
+        small.writeText("!");
+        assertEquals("end!", small.getLineAsString(1).trim());
+    }
+
+    @Test
+    void testResizeReflowsWideCharacters() {
+        TerminalBuffer small = new TerminalBuffer(6, 4, 100);
+        small.writeText("ab终端cd");
+        assertEquals("ab终 端 ", small.getLineAsString(0));
+
+        // a wide character never splits, it moves to the next row
+        small.resize(3, 4);
+        assertEquals("ab ", small.getLineAsString(0));
+        assertEquals("终  ", small.getLineAsString(1));
+        assertEquals("端 c", small.getLineAsString(2));
+        assertEquals("d  ", small.getLineAsString(3));
+        assertEquals(3, small.getCursorRow());
+        assertEquals(1, small.getCursorCol());
+
+        small.resize(8, 4);
+        assertEquals("ab终 端 cd", small.getLineAsString(0));
+        assertEquals(8, small.getCursorCol());
+    }
+
+    @Test
+    void testResizeReflowsLargeHistory() {
+        TerminalBuffer wide = new TerminalBuffer(40, 5, 50000);
+        wide.setSearchIndexEnabled(true);
+        TerminalSnapshot before = null;
+        for (int i = 0; i < 20000; i++) {
+            // each entry wraps onto a second row at width 40
+            wide.writeText(String.format("%05d ", i) + "x".repeat(44));
+            wide.carriageReturn();
+            wide.lineFeed();
+            if (i == 10) {
+                before = wide.snapshot();
+            }
+        }
+        assertEquals(39996, wide.getScrollbackSize());
+
+        wide.resize(60, 5);
+        assertEquals(19998, wide.getScrollbackSize());
+        assertEquals("00000 " + "x".repeat(44) + " ".repeat(10), wide.getLineAsString(-19998));
+        assertEquals("19997 " + "x".repeat(44), wide.getLineAsString(-1).trim());
+        assertEquals(-19998 + 12345, wide.find("12345 ", false, -19998, 0, true).getRow());
+
+        // snapshots keep the old layout
+        assertEquals("00000 " + "x".repeat(34), before.getLineAsString(-before.getScrollbackSize()));
+    }
+
     @Test
     void testWideCharacters() {
         // Wide character should occupy 2 cells
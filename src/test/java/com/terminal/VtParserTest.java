@@ -0,0 +1,212 @@
+package com.terminal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VtParserTest {
+
+    private TerminalBuffer buffer;
+    private VtParser parser;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new TerminalBuffer(80, 24, 100);
+        parser = new VtParser(buffer);
+    }
+
+    private void feed(String s) {
+        parser.feed(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testPlainTextAndNewlines() {
+        feed("hello\r\nworld");
+
+        assertEquals("hello", buffer.getLineAsString(0).trim());
+        assertEquals("world", buffer.getLineAsString(1).trim());
+        assertEquals(1, buffer.getCursorRow());
+        assertEquals(5, buffer.getCursorCol());
+    }
+
+    @Test
+    void testUtf8SplitAcrossChunks() {
+        byte[] bytes = "a你b".getBytes(StandardCharsets.UTF_8);
+        // feed one byte at a time so the 3-byte sequence is split twice
+        for (byte b : bytes) {
+            parser.feed(new byte[]{b}, 0, 1);
+        }
+
+        assertEquals('a', buffer.getCharAt(0, 0));
+        assertEquals('你', buffer.getCharAt(0, 1));
+        assertEquals('b', buffer.getCharAt(0, 3));
+        assertEquals(bytes.length, parser.getBytesProcessed());
+    }
+
+    @Test
+    void testInvalidUtf8BecomesReplacementCharacter() {
+        parser.feed(new byte[]{'x', (byte) 0xE4, 'y', (byte) 0xFF}, 0, 4);
+
+        assertEquals("x�y�", buffer.getLineAsString(0).substring(0, 4));
+    }
+
+    @Test
+    void testCursorPositioningSplitAcrossChunks() {
+        feed("\u001b[1");
+        feed("0;2");
+        feed("0HX");
+
+        assertEquals('X', buffer.getCharAt(9, 19));
+
+        feed("\u001b[2A\u001b[3D\u001b[G");
+        assertEquals(7, buffer.getCursorRow());
+        assertEquals(0, buffer.getCursorCol());
+    }
+
+    @Test
+    void testSgrColorsAndStyles() {
+        feed("\u001b[1;4;31;44mA\u001b[22;93mB\u001b[0mC");
+
+        CellAttributes a = buffer.getAttributesAt(0, 0);
+        assertEquals(CellAttributes.Color.RED, a.getForeground());
+        assertEquals(CellAttributes.Color.BLUE, a.getBackground());
+        assertTrue(a.getStyle().isBold());
+        assertTrue(a.getStyle().isUnderline());
+
+        CellAttributes b = buffer.getAttributesAt(0, 1);
+        assertEquals(CellAttributes.Color.BRIGHT_YELLOW, b.getForeground());
+        assertEquals(CellAttributes.Color.BLUE, b.getBackground());
+        assertFalse(b.getStyle().isBold());
+
+        assertEquals(new CellAttributes(), buffer.getAttributesAt(0, 2));
+    }
+
+    @Test
+    void testSgrColonSubparameters() {
+        // curly underline, then no underline
+        feed("\u001b[4:3mA\u001b[4:0mB");
+        CellAttributes a = buffer.getAttributesAt(0, 0);
+        assertTrue(a.getStyle().isUnderline());
+        assertFalse(a.getStyle().isItalic());
+        assertFalse(buffer.getAttributesAt(0, 1).getStyle().isUnderline());
+
+        // true color with an empty colorspace field is skipped as a whole; 31 isn't red
+        feed("\u001b[0;38:2::255:0:31;1mC");
+        CellAttributes c = buffer.getAttributesAt(0, 2);
+        assertEquals(CellAttributes.Color.DEFAULT, c.getForeground());
+        assertTrue(c.getStyle().isBold());
+        assertFalse(c.getStyle().isItalic());
+
+        // palette colors in colon form, and the semicolon form still works
+        feed("\u001b[0;38:5:2;48:5:4mD\u001b[38;5;1;48;2;0;0;255mE");
+        CellAttributes d = buffer.getAttributesAt(0, 3);
+        assertEquals(CellAttributes.Color.GREEN, d.getForeground());
+        assertEquals(CellAttributes.Color.BLUE, d.getBackground());
+        CellAttributes e = buffer.getAttributesAt(0, 4);
+        assertEquals(CellAttributes.Color.RED, e.getForeground());
+        assertEquals(CellAttributes.Color.BLUE, e.getBackground());
+    }
+
+    @Test
+    void testEraseSequences() {
+        feed("first line\r\nsecond line");
+        feed("\u001b[1;6H\u001b[K");
+        assertEquals("first", buffer.getLineAsString(0).trim());
+
+        feed("\u001b[2J");
+        assertTrue(buffer.getScreenContent().trim().isEmpty());
+        // ED doesn't move the cursor
+        assertEquals(0, buffer.getCursorRow());
+        assertEquals(5, buffer.getCursorCol());
+    }
+
+    @Test
+    void testOscIsSkippedAcrossChunks() {
+        feed("a\u001b]0;window ti");
+        feed("tle\u0007b\u001b]2;other\u001b");
+        feed("\\c");
+
+        assertEquals("abc", buffer.getLineAsString(0).trim());
+    }
+
+    @Test
+    void testCharacterEditing() {
+        // a shell redrawing a line: insert, delete and erase characters in place
+        feed("hello world\r\u001b[6C\u001b[2@XY\u001b[C\u001b[2P\u001b[X");
+        assertEquals("hello XYw d", buffer.getLineAsString(0).trim());
+        assertEquals(9, buffer.getCursorCol());
+    }
+
+    @Test
+    void testScrollRegionSequences() {
+        TerminalBuffer small = new TerminalBuffer(10, 5, 10);
+        VtParser smallParser = new VtParser(small);
+        smallParser.feed(ByteBuffer.wrap("a\r\nb\r\nc\r\nd\r\ne".getBytes(StandardCharsets.UTF_8)));
+
+        // region rows 2-4, delete one line at row 2, insert one at row 3, status line untouched
+        smallParser.feed(ByteBuffer.wrap("\u001b[2;4r\u001b[2H\u001b[M\u001b[3H\u001b[L".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("a", small.getLineAsString(0).trim());
+        assertEquals("c", small.getLineAsString(1).trim());
+        assertEquals("", small.getLineAsString(2).trim());
+        assertEquals("d", small.getLineAsString(3).trim());
+        assertEquals("e", small.getLineAsString(4).trim());
+        assertEquals(0, small.getScrollbackSize());
+
+        smallParser.feed(ByteBuffer.wrap("\u001b[r\u001b[S".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, small.getScrollTop());
+        assertEquals(4, small.getScrollBottom());
+        assertEquals(1, small.getScrollbackSize());
+    }
+
+    @Test
+    void testAlternateScreenSequences() {
+        TerminalBuffer small = new TerminalBuffer(10, 3, 10);
+        VtParser smallParser = new VtParser(small);
+        smallParser.feed(ByteBuffer.wrap("shell$ vi".getBytes(StandardCharsets.UTF_8)));
+
+        smallParser.feed(ByteBuffer.wrap("\u001b[?1049h\u001b[1;1Hfile".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(small.isAlternateScreenActive());
+        assertEquals("file", small.getLineAsString(0).trim());
+
+        smallParser.feed(ByteBuffer.wrap("\u001b[?1049l".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(small.isAlternateScreenActive());
+        assertEquals("shell$ vi", small.getLineAsString(0).trim());
+        assertEquals(9, small.getCursorCol());
+
+        // other private modes are ignored
+        smallParser.feed(ByteBuffer.wrap("\u001b[?25l\u001b[?1h".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(small.isAlternateScreenActive());
+    }
+
+    @Test
+    void testLineFeedScrollsAtBottom() {
+        TerminalBuffer small = new TerminalBuffer(10, 3, 10);
+        VtParser smallParser = new VtParser(small);
+        smallParser.feed(ByteBuffer.wrap("1\r\n2\r\n3\r\n4".getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals(1, small.getScrollbackSize());
+        assertEquals("1", small.getLineAsString(-1).trim());
+        assertEquals("4", small.getLineAsString(2).trim());
+    }
+
+    @Test
+    void testFeedFromChannel() throws Exception {
+        byte[] data = "\u001b[32mgreen\u001b[m text".getBytes(StandardCharsets.UTF_8);
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(data));
+
+        while (parser.feed(channel) >= 0) {
+            // keep reading until end of stream
+        }
+
+        assertEquals("green text", buffer.getLineAsString(0).trim());
+        assertEquals(CellAttributes.Color.GREEN, buffer.getAttributesAt(0, 0).getForeground());
+        assertEquals(data.length, parser.getBytesProcessed());
+    }
+}